@@ -5,6 +5,7 @@ plugins {
     id("com.gradleup.shadow") version "8.3.1"
     id("maven-publish")
     id("org.jreleaser") version "1.20.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "dev.neovoxel.jarflow"
@@ -25,6 +26,37 @@ dependencies {
     implementation("me.lucko:jar-relocator:1.7")
     compileOnly("org.projectlombok:lombok:1.18.42")
     annotationProcessor("org.projectlombok:lombok:1.18.42")
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// compile against the Java 8 API even on newer JDKs
+tasks.withType<JavaCompile>().configureEach {
+    options.release.set(8)
+}
+
+jmh {
+    jmhVersion = "1.37"
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
+    jvmArgs = listOf("-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+}
+
+// cold/warm/partial startup against a synthetic loopback repository; the first run on a machine records the baseline
+// (reported as NOT COMPARED), re-record it with -PstartupArgs=--update-baseline
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "verification"
+    description = "Measures end-to-end dependency loading and fails on a regression past the stored baseline."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "dev.neovoxel.jarflow.benchmark.StartupBenchmark"
+    args(layout.projectDirectory.file("src/jmh/startup-baseline.properties").asFile.path, "--record-missing-baseline")
+    (findProperty("startupArgs") as String?)?.split(" ")?.filter { it.isNotBlank() }?.let { args(it) }
 }
 
 publishing {
@@ -0,0 +1,84 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.remote.DependencyDownloader;
+import dev.neovoxel.jarflow.util.HashUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Chunked download of one large artifact from a loopback repository, including checksum verification and the
+ * final atomic move.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+
+    private static final String PATH = "com/example/big/1.0/big-1.0.jar";
+
+    @Param({"16777216"})
+    private int size;
+
+    @Param({"262144", "1048576"})
+    private int chunkSize;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Path repositoryRoot;
+    private LoopbackRepository repository;
+    private Dependency dependency;
+    private File libDir;
+
+    @Setup(Level.Trial)
+    public void startRepository() throws IOException {
+        repositoryRoot = Files.createTempDirectory("jarflow-download-bench");
+        Path jar = repositoryRoot.resolve(PATH);
+        Files.createDirectories(jar.getParent());
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        Files.write(jar, content);
+        Files.write(jar.resolveSibling(jar.getFileName() + ".sha1"),
+                HashUtil.sha1(jar.toFile()).getBytes(StandardCharsets.US_ASCII));
+        repository = new LoopbackRepository(repositoryRoot);
+        dependency = Dependency.builder().groupId("com.example").artifactId("big").version("1.0").build();
+        DependencyDownloader.setChunkSize(chunkSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void createLibDir() throws IOException {
+        libDir = Files.createTempDirectory("jarflow-download-libs").toFile();
+    }
+
+    @Benchmark
+    public void download() throws IOException, InterruptedException {
+        DependencyDownloader.download(repository.getUrl() + PATH, dependency, libDir, threads);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteLibDir() throws IOException {
+        delete(libDir.toPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRepository() throws IOException {
+        repository.close();
+        delete(repositoryRoot);
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a directory over HTTP on the loopback interface, with optional per-request latency and a per-connection
+ * bandwidth cap. Supports single {@code Range} requests the way Maven repositories do.
+ */
+public class LoopbackRepository implements Closeable {
+
+    private final Path root;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final long bytesPerSecond;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    public LoopbackRepository(Path root) throws IOException {
+        this(root, 0, 0);
+    }
+
+    /**
+     * @param latencyMillis  delay before each response, 0 for none
+     * @param bytesPerSecond bandwidth per response, 0 for unlimited
+     */
+    public LoopbackRepository(Path root, long latencyMillis, long bytesPerSecond) throws IOException {
+        this.root = root;
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Loopback Repository");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public void resetCounters() {
+        requests.set(0);
+        bytesServed.set(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            Path file = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            long size = Files.size(file);
+            long start = 0;
+            long end = size - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                start = Long.parseLong(bounds[0]);
+                end = bounds.length > 1 && !bounds[1].isEmpty() ? Math.min(Long.parseLong(bounds[1]), size - 1) : size - 1;
+                if (start >= size) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+            long length = end - start + 1;
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (RandomAccessFile input = new RandomAccessFile(file.toFile(), "r");
+                 OutputStream output = exchange.getResponseBody()) {
+                input.seek(start);
+                byte[] buffer = new byte[16384];
+                long remaining = length;
+                long began = System.nanoTime();
+                long sent = 0;
+                while (remaining > 0) {
+                    int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) break;
+                    output.write(buffer, 0, read);
+                    remaining -= read;
+                    sent += read;
+                    throttle(began, sent);
+                }
+                bytesServed.addAndGet(sent);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void throttle(long began, long sent) throws InterruptedException {
+        if (bytesPerSecond <= 0) return;
+        long expected = sent * 1_000_000_000L / bytesPerSecond;
+        long elapsed = System.nanoTime() - began;
+        if (expected > elapsed) {
+            Thread.sleep((expected - elapsed) / 1_000_000, (int) ((expected - elapsed) % 1_000_000));
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
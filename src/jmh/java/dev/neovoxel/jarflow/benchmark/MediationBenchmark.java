@@ -0,0 +1,48 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.pom.PomParser;
+import dev.neovoxel.jarflow.util.DependencyNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Version mediation over a flattened synthetic graph where many nodes share a groupId:artifactId.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MediationBenchmark {
+
+    @Param({"1000", "10000"})
+    private int nodes;
+
+    @Param({"200"})
+    private int artifacts;
+
+    private List<DependencyNode> graph;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        graph = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            int artifact = random.nextInt(artifacts);
+            Dependency dependency = Dependency.builder()
+                    .groupId("com.example.group" + artifact % 20)
+                    .artifactId("artifact" + artifact)
+                    .version(random.nextInt(4) + "." + random.nextInt(10) + "." + random.nextInt(20))
+                    .build();
+            graph.add(new DependencyNode(dependency, ""));
+        }
+    }
+
+    @Benchmark
+    public List<DependencyNode> filter() {
+        return PomParser.filter(graph);
+    }
+}
@@ -0,0 +1,107 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import dev.neovoxel.jarflow.index.ClassIndex;
+import dev.neovoxel.jarflow.index.JarScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Prefix searches over generated jars: the central-directory scanner, a plain JarFile walk for comparison,
+ * the prebuilt class index, and an early-exit lookup of a single class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanBenchmark {
+
+    @Param({"20", "200"})
+    private int jarCount;
+
+    @Param({"500"})
+    private int classesPerJar;
+
+    private Path directory;
+    private List<File> jars;
+    private List<ClassIndex> indexes;
+    private String prefix;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("jarflow-scan-bench");
+        jars = new ArrayList<>();
+        indexes = new ArrayList<>();
+        byte[] body = new byte[64];
+        for (int i = 0; i < jarCount; i++) {
+            File jar = directory.resolve("lib" + i + ".jar").toFile();
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+                for (int j = 0; j < classesPerJar; j++) {
+                    out.putNextEntry(new JarEntry("com/example/lib" + i + "/pkg" + j % 10 + "/Class" + j + ".class"));
+                    out.write(body);
+                    out.closeEntry();
+                }
+                out.putNextEntry(new JarEntry("META-INF/resource" + i + ".txt"));
+                out.closeEntry();
+            }
+            jars.add(jar);
+            indexes.add(ClassIndex.of(jar));
+        }
+        prefix = "com.example.lib" + (jarCount / 2) + ".pkg3";
+    }
+
+    @Benchmark
+    public List<String> centralDirectoryScan() {
+        return JarScanner.findClassNames(jars, prefix);
+    }
+
+    @Benchmark
+    public void jarFileScan(Blackhole blackhole) throws IOException {
+        String path = prefix.replace('.', '/');
+        for (File jar : jars) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.startsWith(path) && name.endsWith(".class")) {
+                        blackhole.consume(name.substring(0, name.length() - 6).replace('/', '.'));
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexSearch(Blackhole blackhole) {
+        for (ClassIndex index : indexes) {
+            blackhole.consume(index.search(prefix));
+        }
+    }
+
+    @Benchmark
+    public String firstMatch() {
+        AtomicReference<String> found = new AtomicReference<>();
+        JarScanner.scanClasses(jars, prefix, (jar, name) -> {
+            found.compareAndSet(null, name.toClassName());
+            return false;
+        });
+        return found.get();
+    }
+
+    @TearDown
+    public void cleanUp() throws IOException {
+        DownloadBenchmark.delete(directory);
+    }
+}
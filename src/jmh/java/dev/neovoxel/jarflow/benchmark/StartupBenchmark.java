@@ -0,0 +1,185 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import dev.neovoxel.jarflow.JarFlow;
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.loader.IsolatedLoader;
+import dev.neovoxel.jarflow.repository.Repository;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end startup check: generates a synthetic repository, serves it from a throttled loopback server and runs
+ * {@link JarFlow#loadDependencies} cold (empty lib dir), warm (everything cached) and partially cached, each in a
+ * fresh JVM. Results are compared against a baseline file and the process exits with 1 on a regression, or with 2
+ * when there is no baseline; {@code --update-baseline} records one instead of comparing, and
+ * {@code --record-missing-baseline} does so only when the file does not exist yet.
+ * <p>
+ * Usage: {@code StartupBenchmark <baseline-file> [--update-baseline] [--record-missing-baseline] [--libraries=N]
+ * [--latency=ms] [--bandwidth=bytes/s] [--tolerance=0.25] [--isolated]}
+ */
+public class StartupBenchmark {
+
+    private static final String RESULT_PREFIX = "STARTUP-RESULT ";
+
+    private static final String[] SCENARIOS = {"cold", "warm", "partial"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            runChild(args);
+            return;
+        }
+        if (args.length == 0) {
+            System.err.println("Usage: StartupBenchmark <baseline-file> [--update-baseline] [--record-missing-baseline] "
+                    + "[--libraries=N] [--latency=ms] [--bandwidth=bytes/s] [--tolerance=0.25] [--isolated]");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        int libraries = Integer.parseInt(options.getOrDefault("libraries", "300"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "20"));
+        long bandwidth = Long.parseLong(options.getOrDefault("bandwidth", String.valueOf(20L * 1024 * 1024)));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.25"));
+        boolean isolated = options.containsKey("isolated");
+        boolean updateBaseline = options.containsKey("update-baseline");
+        // a missing baseline must not turn the check into a silent pass
+        boolean recordMissing = !updateBaseline && !baselineFile.isFile() && options.containsKey("record-missing-baseline");
+        if (!updateBaseline && !recordMissing && !baselineFile.isFile()) {
+            System.err.println("No startup baseline at " + baselineFile + ", run with --update-baseline to record one");
+            System.exit(2);
+        }
+
+        Path work = Files.createTempDirectory("jarflow-startup");
+        Path repositoryRoot = work.resolve("repository");
+        Path libDir = work.resolve("libs");
+        List<String> roots = new SyntheticRepository(repositoryRoot, libraries, 20, 5, 4 * 1024 * 1024).generate();
+
+        Properties results = new Properties();
+        try (LoopbackRepository repository = new LoopbackRepository(repositoryRoot, latency, bandwidth)) {
+            for (String scenario : SCENARIOS) {
+                if (scenario.equals("partial")) {
+                    dropHalfOfTheJars(libDir);
+                }
+                repository.resetCounters();
+                String[] result = runScenario(scenario, libDir, repository.getUrl(), roots, isolated);
+                results.setProperty(scenario + ".wallMillis", result[0]);
+                results.setProperty(scenario + ".peakHeapBytes", result[1]);
+                results.setProperty(scenario + ".requests", String.valueOf(repository.getRequests()));
+                System.out.printf("%-8s %8s ms %6d requests %6d MiB peak heap%n", scenario, result[0],
+                        repository.getRequests(), Long.parseLong(result[1]) / (1024 * 1024));
+            }
+        } finally {
+            DownloadBenchmark.delete(work);
+        }
+
+        if (updateBaseline || recordMissing) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(baselineFile), StandardCharsets.UTF_8)) {
+                results.store(writer, "JarFlow startup baseline, libraries=" + libraries + " latency=" + latency + "ms bandwidth=" + bandwidth);
+            }
+            if (recordMissing) {
+                System.out.println("NOT COMPARED: there was no baseline at " + baselineFile
+                        + ", this run was recorded as the new baseline. Later runs compare against it.");
+            } else {
+                System.out.println("Baseline written to " + baselineFile);
+            }
+            return;
+        }
+        Properties baseline = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(baselineFile), StandardCharsets.UTF_8)) {
+            baseline.load(reader);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (String key : new TreeSet<>(results.stringPropertyNames())) {
+            String expected = baseline.getProperty(key);
+            if (expected == null) continue;
+            long actual = Long.parseLong(results.getProperty(key));
+            long limit = (long) (Long.parseLong(expected) * (1 + tolerance));
+            if (actual > limit) {
+                regressions.add(key + ": " + actual + " > " + expected + " (+" + (int) (tolerance * 100) + "%)");
+            }
+        }
+        if (!regressions.isEmpty()) {
+            System.err.println("Startup regressed past " + baselineFile + ":");
+            regressions.forEach(regression -> System.err.println("  " + regression));
+            System.exit(1);
+        }
+        System.out.println("No regression against " + baselineFile);
+    }
+
+    private static String[] runScenario(String scenario, Path libDir, String repositoryUrl, List<String> roots,
+                                        boolean isolated) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dorg.slf4j.simpleLogger.defaultLogLevel=warn");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupBenchmark.class.getName());
+        command.add("--child");
+        command.add(libDir.toString());
+        command.add(repositoryUrl);
+        command.add(String.valueOf(isolated));
+        command.addAll(roots);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line.substring(RESULT_PREFIX.length());
+                } else {
+                    System.out.println("[" + scenario + "] " + line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IOException("Scenario " + scenario + " failed with exit code " + process.exitValue());
+        }
+        return result.split(" ");
+    }
+
+    private static void runChild(String[] args) throws Exception {
+        long start = System.nanoTime();
+        JarFlow.setLibDir(new File(args[1]));
+        JarFlow.addRepository(Repository.builder().url(args[2]).build());
+        if (Boolean.parseBoolean(args[3])) {
+            JarFlow.setLoader(new IsolatedLoader());
+        }
+        List<Dependency> roots = new ArrayList<>();
+        for (int i = 4; i < args.length; i++) {
+            roots.add(Dependency.builder().groupId(SyntheticRepository.GROUP).artifactId(args[i]).version("1.0").build());
+        }
+        JarFlow.loadDependencies(roots);
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println(RESULT_PREFIX + wallMillis + " " + peakHeap);
+    }
+
+    // keeps poms and every other jar, so the next run resolves from cache but still downloads
+    private static void dropHalfOfTheJars(Path libDir) throws IOException {
+        List<Path> jars;
+        try (Stream<Path> paths = Files.walk(libDir)) {
+            jars = paths.filter(path -> path.toString().endsWith(".jar")).sorted().collect(Collectors.toList());
+        }
+        for (int i = 0; i < jars.size(); i += 2) {
+            Files.delete(jars.get(i));
+        }
+    }
+}
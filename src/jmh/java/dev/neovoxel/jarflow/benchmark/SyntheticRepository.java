@@ -0,0 +1,156 @@
+package dev.neovoxel.jarflow.benchmark;
+
+import dev.neovoxel.jarflow.util.HashUtil;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Writes a deterministic Maven repository layout: a parent pom, an imported BOM, shared libraries published in two
+ * versions (so mediation has work to do), a chain of libraries with diamond dependencies, some large jars, and a
+ * few application roots depending on all of it.
+ */
+public class SyntheticRepository {
+
+    public static final String GROUP = "com.example.synthetic";
+
+    private final Path root;
+    private final int libraries;
+    private final int sharedLibraries;
+    private final int roots;
+    private final int largeJarBytes;
+    private final Random random = new Random(42);
+
+    public SyntheticRepository(Path root, int libraries, int sharedLibraries, int roots, int largeJarBytes) {
+        this.root = root;
+        this.libraries = libraries;
+        this.sharedLibraries = sharedLibraries;
+        this.roots = roots;
+        this.largeJarBytes = largeJarBytes;
+    }
+
+    /**
+     * Generates the repository and returns the artifactIds of the application roots, all at version 1.0.
+     */
+    public List<String> generate() throws IOException {
+        writePom("parent", "1.0", parentPom());
+        writePom("bom", "1.0", bomPom());
+        for (int i = 0; i < sharedLibraries; i++) {
+            for (String version : new String[]{"1.0", "1.1"}) {
+                writeArtifact("shared" + i, version, libraryPom("shared" + i, version, new ArrayList<>()), 20, false);
+            }
+        }
+        for (int i = 0; i < libraries; i++) {
+            List<String> dependencies = new ArrayList<>();
+            // earlier libraries only, so the graph stays acyclic and shared subtrees form diamonds
+            for (int j = 0; j < Math.min(i, 3); j++) {
+                dependencies.add(dependency("lib" + random.nextInt(i), "1.0"));
+            }
+            dependencies.add(dependency("shared" + random.nextInt(sharedLibraries), random.nextBoolean() ? "1.0" : "1.1"));
+            dependencies.add(dependency("shared" + random.nextInt(sharedLibraries), null));
+            writeArtifact("lib" + i, "1.0", libraryPom("lib" + i, "1.0", dependencies), 50, i % 20 == 0);
+        }
+        List<String> rootIds = new ArrayList<>();
+        for (int i = 0; i < roots; i++) {
+            List<String> dependencies = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                dependencies.add(dependency("lib" + (libraries - 1 - random.nextInt(Math.max(1, libraries / 4))), "1.0"));
+            }
+            writeArtifact("app" + i, "1.0", libraryPom("app" + i, "1.0", dependencies), 10, false);
+            rootIds.add("app" + i);
+        }
+        return rootIds;
+    }
+
+    private String parentPom() {
+        return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>" + GROUP + "</groupId>\n"
+                + "  <artifactId>parent</artifactId>\n"
+                + "  <version>1.0</version>\n"
+                + "  <packaging>pom</packaging>\n"
+                + "  <properties><synthetic.default>1.0</synthetic.default></properties>\n"
+                + "</project>\n";
+    }
+
+    private String bomPom() {
+        StringBuilder managed = new StringBuilder();
+        for (int i = 0; i < sharedLibraries; i++) {
+            managed.append("      <dependency><groupId>").append(GROUP).append("</groupId><artifactId>shared").append(i)
+                    .append("</artifactId><version>${synthetic.default}</version></dependency>\n");
+        }
+        return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <parent><groupId>" + GROUP + "</groupId><artifactId>parent</artifactId><version>1.0</version><relativePath/></parent>\n"
+                + "  <artifactId>bom</artifactId>\n"
+                + "  <packaging>pom</packaging>\n"
+                + "  <dependencyManagement>\n    <dependencies>\n" + managed + "    </dependencies>\n  </dependencyManagement>\n"
+                + "</project>\n";
+    }
+
+    private String libraryPom(String artifactId, String version, List<String> dependencies) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n")
+                .append("  <modelVersion>4.0.0</modelVersion>\n")
+                .append("  <parent><groupId>").append(GROUP).append("</groupId><artifactId>parent</artifactId><version>1.0</version><relativePath/></parent>\n")
+                .append("  <artifactId>").append(artifactId).append("</artifactId>\n")
+                .append("  <version>").append(version).append("</version>\n")
+                .append("  <dependencyManagement>\n    <dependencies>\n")
+                .append("      <dependency><groupId>").append(GROUP).append("</groupId><artifactId>bom</artifactId><version>1.0</version><type>pom</type><scope>import</scope></dependency>\n")
+                .append("    </dependencies>\n  </dependencyManagement>\n")
+                .append("  <dependencies>\n");
+        for (String dependency : dependencies) {
+            builder.append(dependency);
+        }
+        builder.append("  </dependencies>\n</project>\n");
+        return builder.toString();
+    }
+
+    private static String dependency(String artifactId, String version) {
+        return "    <dependency><groupId>" + GROUP + "</groupId><artifactId>" + artifactId + "</artifactId>"
+                + (version == null ? "" : "<version>" + version + "</version>") + "</dependency>\n";
+    }
+
+    private Path directory(String artifactId, String version) throws IOException {
+        Path directory = root.resolve(GROUP.replace('.', '/')).resolve(artifactId).resolve(version);
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    private void writePom(String artifactId, String version, String content) throws IOException {
+        Files.write(directory(artifactId, version).resolve(artifactId + "-" + version + ".pom"),
+                content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeArtifact(String artifactId, String version, String pom, int classes, boolean large) throws IOException {
+        writePom(artifactId, version, pom);
+        Path jar = directory(artifactId, version).resolve(artifactId + "-" + version + ".jar");
+        String packageName = GROUP.replace('.', '/') + "/" + artifactId.replace('.', '_') + "_" + version.replace('.', '_');
+        byte[] body = new byte[256];
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar.toFile()))) {
+            for (int i = 0; i < classes; i++) {
+                random.nextBytes(body);
+                out.putNextEntry(new JarEntry(packageName + "/Generated" + i + ".class"));
+                out.write(body);
+                out.closeEntry();
+            }
+            if (large) {
+                byte[] blob = new byte[largeJarBytes];
+                random.nextBytes(blob);
+                out.putNextEntry(new JarEntry(packageName + "/blob.bin"));
+                out.write(blob);
+                out.closeEntry();
+            }
+        }
+        Files.write(jar.resolveSibling(jar.getFileName() + ".sha1"),
+                HashUtil.sha1(jar.toFile()).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,50 @@
+package dev.neovoxel.jarflow.pom;
+
+import org.apache.maven.model.Model;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Effective model building for self-contained poms of different sizes, without any network access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelBuildBenchmark {
+
+    @Param({"5", "50"})
+    private int dependencies;
+
+    private String pom;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n")
+                .append("  <modelVersion>4.0.0</modelVersion>\n")
+                .append("  <groupId>com.example</groupId>\n")
+                .append("  <artifactId>canned</artifactId>\n")
+                .append("  <version>1.0.0</version>\n")
+                .append("  <properties>\n")
+                .append("    <shared.version>2.3.4</shared.version>\n")
+                .append("  </properties>\n")
+                .append("  <dependencyManagement>\n    <dependencies>\n");
+        for (int i = 0; i < dependencies; i++) {
+            builder.append("      <dependency><groupId>com.example.managed</groupId><artifactId>lib").append(i)
+                    .append("</artifactId><version>${shared.version}</version></dependency>\n");
+        }
+        builder.append("    </dependencies>\n  </dependencyManagement>\n  <dependencies>\n");
+        for (int i = 0; i < dependencies; i++) {
+            builder.append("    <dependency><groupId>com.example.managed</groupId><artifactId>lib").append(i)
+                    .append("</artifactId>").append(i % 5 == 0 ? "<scope>test</scope>" : "").append("</dependency>\n");
+        }
+        builder.append("  </dependencies>\n</project>\n");
+        pom = builder.toString();
+    }
+
+    @Benchmark
+    public Model buildModel() {
+        return PomParser.getModel(pom, "file:///nonexistent/", "com.example:canned:1.0.0");
+    }
+}
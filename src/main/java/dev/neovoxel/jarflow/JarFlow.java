@@ -1,14 +1,33 @@
 package dev.neovoxel.jarflow;
 
 import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.dependency.DependencyRegistry;
+import dev.neovoxel.jarflow.index.ClassHandle;
+import dev.neovoxel.jarflow.index.ClassIndex;
+import dev.neovoxel.jarflow.index.JarScanner;
+import dev.neovoxel.jarflow.lock.LockFile;
+import dev.neovoxel.jarflow.metrics.Metrics;
+import dev.neovoxel.jarflow.metrics.Phase;
+import dev.neovoxel.jarflow.lock.LockedArtifact;
+import dev.neovoxel.jarflow.lock.LockedRoot;
 import dev.neovoxel.jarflow.pom.PomParser;
+import dev.neovoxel.jarflow.remote.DownloadListener;
+import dev.neovoxel.jarflow.remote.DownloadScheduler;
+import dev.neovoxel.jarflow.remote.HttpUtil;
+import dev.neovoxel.jarflow.remote.KeepAliveTransport;
+import dev.neovoxel.jarflow.remote.MetadataResolver;
+import dev.neovoxel.jarflow.remote.PomCache;
 import dev.neovoxel.jarflow.repository.Repository;
 import dev.neovoxel.jarflow.remote.DependencyDownloader;
 import dev.neovoxel.jarflow.loader.ExternalLoader;
+import dev.neovoxel.jarflow.loader.JarBundler;
 import dev.neovoxel.jarflow.util.DependencyNode;
+import dev.neovoxel.jarflow.util.HashUtil;
+import dev.neovoxel.jarflow.util.IntegrityIndex;
+import dev.neovoxel.jarflow.util.RelocationUtil;
+import dev.neovoxel.jarflow.util.SnapshotBuilds;
 import lombok.Getter;
 import lombok.Setter;
-import me.lucko.jarrelocator.JarRelocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,34 +35,99 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class JarFlow {
 
-    private static final List<Repository> repositories = new ArrayList<>();
+    private static final List<Repository> repositories = new CopyOnWriteArrayList<>();
 
-    private static final List<DependencyNode> dependencies = new ArrayList<>();
+    private static final List<DependencyNode> dependencies = new CopyOnWriteArrayList<>();
 
-    private static final List<Dependency> loaded = new ArrayList<>();
+    private static final DependencyRegistry loaded = new DependencyRegistry();
 
     @Setter
     private static int threadCount = 4;
 
-    @Setter
+    @Getter
     private static File libDir = new File("libs");
 
+    @Setter
+    @Getter
+    private static boolean useLockFile = false;
+
+    // consult ~/.m2/repository before any remote repository
+    @Setter
+    @Getter
+    private static boolean useMavenLocal = false;
+
+    private static final String LOCK_FILE_NAME = "jarflow.lock";
+
+    private static LockFile lockFile;
+
+    private static final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "JarFlow Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Object loadLock = new Object();
+
+    private static final ExecutorService relocationExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "JarFlow Relocator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // checks of jars already on disk, kept off the download pool and its per-host limits
+    private static final ExecutorService checkExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+        Thread thread = new Thread(runnable, "JarFlow Checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Setter
     @Getter
     private static ExternalLoader loader = new ExternalLoader();
 
+    // merge the jars of each root into one cached bundle jar before loading them
+    @Setter
+    @Getter
+    private static boolean bundleMode = false;
+
     private static Logger logger = LoggerFactory.getLogger("JarFlow");
 
-    static {
-        ExternalLoader.init();
+
+    public static void setOffline(boolean offline) {
+        HttpUtil.setOffline(offline);
     }
 
+    public static boolean isOffline() {
+        return HttpUtil.isOffline();
+    }
+
+    public static void setLibDir(File libDir) {
+        JarFlow.libDir = libDir;
+        PomCache.setDirectory(libDir);
+    }
+
+    // the scheduler and the default transport share one per-host limit; the old scheduler finishes its queue first
+    public static void setDownloadConcurrency(int maxConcurrency, int maxPerHost) {
+        DownloadScheduler previous = DependencyDownloader.getScheduler();
+        DependencyDownloader.setScheduler(new DownloadScheduler(maxConcurrency, maxPerHost));
+        previous.shutdown();
+        if (HttpUtil.getTransport() instanceof KeepAliveTransport) {
+            KeepAliveTransport transport = (KeepAliveTransport) HttpUtil.getTransport();
+            HttpUtil.setTransport(new KeepAliveTransport(maxPerHost, transport.getConnectTimeout(), transport.getReadTimeout()));
+        }
+    }
+
+    public static void setResolveThreadCount(int resolveThreadCount) {
+        PomParser.setParallelism(resolveThreadCount);
+    }
 
     public static void addRepository(Repository repository) {
         repositories.add(repository);
@@ -59,130 +143,515 @@ public class JarFlow {
         }
     }
 
-    private static void load(DependencyNode dependencyNode) throws IOException, InterruptedException {
+    private static List<LockedArtifact> load(DependencyNode dependencyNode, Map<String, CompletableFuture<File>> prepared,
+                                             LoadContext context) throws IOException, InterruptedException {
         List<DependencyNode> origins = new ArrayList<>();
         origins.add(dependencyNode);
-        Collection<DependencyNode> flatNodes = PomParser.filter(PomParser.getAllNodes(origins));
+        List<DependencyNode> flatNodes = mediate(PomParser.filter(PomParser.getAllNodes(origins)));
+        Map<String, LockedArtifact> artifacts = new LinkedHashMap<>();
+        List<File> files = new ArrayList<>();
+        DependencyRegistry loading = new DependencyRegistry();
+        int total = countToLoad(flatNodes.stream().map(DependencyNode::getDependency).collect(Collectors.toList()));
         for (DependencyNode node : flatNodes) {
-            if (!node.getDependency().checkHas(loaded)) {
-                Dependency dependency = node.getDependency();
-                String fileName = dependency.getArtifactId() + "-" + dependency.getVersion();
-                Path path = libDir.toPath()
-                        .resolve(dependency.getGroupId())
-                        .resolve(dependency.getArtifactId())
-                        .resolve(dependency.getVersion())
-                        .resolve(fileName + ".jar");
-                if (!node.getDownloadUrl().isEmpty()) {
-                    if (!hasDownloaded(dependency)) {
-                        DependencyDownloader.download(node.getDownloadUrl(), dependency, libDir, threadCount);
+            Dependency dependency = node.getDependency();
+            String relocatedFile = null;
+            context.checkCancelled();
+            if (!dependency.checkHas(loaded) && !dependency.checkHas(loading)) {
+                File file = await(prepared.computeIfAbsent(dependency.getLocation(), key -> prepare(dependency, node.getDownloadUrl(), context)));
+                if (file != null) {
+                    load(file, files);
+                    relocatedFile = dependency.getRelocations().isEmpty() ? null : file.getName();
+                }
+                loading.add(dependency);
+                if (!bundleMode) {
+                    loaded.add(dependency);
+                }
+                context.loaded(dependency, loading.size(), total);
+            }
+            // nodes loaded by an earlier root are still recorded, so this root's entry is complete on its own
+            if (!artifacts.containsKey(dependency.getLocation())) {
+                artifacts.put(dependency.getLocation(), new LockedArtifact(dependency.getGroupId(), dependency.getArtifactId(),
+                        dependency.getVersion(), node.getNewVersion(), node.getDownloadUrl(),
+                        checksum(dependency, node.getDownloadUrl()), relocatedFile));
+            }
+        }
+        loadBundle(dependencyNode.getDependency(), files);
+        loaded.addAll(loading);
+        return new ArrayList<>(artifacts.values());
+    }
+
+    // a node that lost mediation is replaced by the node holding the chosen version, so only that version is loaded
+    private static List<DependencyNode> mediate(List<DependencyNode> nodes) {
+        Map<String, DependencyNode> byLocation = new HashMap<>();
+        for (DependencyNode node : nodes) {
+            byLocation.putIfAbsent(node.getDependency().getLocation(), node);
+        }
+        List<DependencyNode> result = new ArrayList<>(nodes.size());
+        for (DependencyNode node : nodes) {
+            DependencyNode chosen = node.getNewVersion() == null ? null
+                    : byLocation.get(node.getDependency().withVersion(node.getNewVersion()).getLocation());
+            // keep the node if the chosen version could not be resolved itself
+            boolean usable = chosen != null && !(chosen.getDownloadUrl().isEmpty() && !node.getDownloadUrl().isEmpty());
+            result.add(usable ? chosen : node);
+        }
+        return result;
+    }
+
+    // jars are loaded as soon as they are ready, unless they are collected for the root's bundle
+    private static void load(File file, List<File> bundled) throws IOException {
+        if (bundleMode) {
+            bundled.add(file);
+            return;
+        }
+        Metrics.Timer timer = Metrics.start(Phase.LOAD, file.getName());
+        loader.load(file);
+        timer.stop();
+    }
+
+    // each root keeps one bundle, named after the root so rebuilding it replaces only its own previous bundle
+    private static void loadBundle(Dependency root, List<File> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        File jar = files.size() == 1 ? files.get(0) : index(JarBundler.bundle(
+                "bundle-" + HashUtil.sha1(LockFile.key(root)).substring(0, 12), files, new File(libDir, "bundle")));
+        Metrics.Timer timer = Metrics.start(Phase.LOAD, jar.getName());
+        loader.load(jar);
+        timer.stop();
+    }
+
+    /**
+     * Downloads (if needed) and relocates one artifact in the background. Completes with the jar to load,
+     * or null for artifacts without a jar.
+     */
+    private static CompletableFuture<File> prepare(Dependency dependency, String downloadUrl, LoadContext context) {
+        if (downloadUrl.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // the existence and checksum check can hash the jar or hit the network, so it runs in the background too
+        CompletableFuture<Void> download = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return hasDownloaded(dependency, downloadUrl);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
                     }
-                    if (dependency.getRelocations().isEmpty()) {
-                        loader.load(path.toFile());
-                    } else {
-                        fileName += "-relocated.jar";
-                        JarRelocator jarRelocator = new JarRelocator(path.toFile(), path.resolve("../" + fileName).toFile(), dependency.getRelocations());
-                        jarRelocator.run();
-                        loader.load(path.resolve("../" + fileName).toFile());
+                }, checkExecutor)
+                .thenCompose(downloaded -> {
+                    Metrics.cacheAccess("artifact", downloaded);
+                    if (downloaded) {
+                        return CompletableFuture.completedFuture(null);
                     }
+                    Metrics.Timer timer = Metrics.start(Phase.DOWNLOAD, dependency.getLocation());
+                    return DependencyDownloader.downloadAsync(downloadUrl, dependency, libDir, threadCount, context.downloadListener(dependency))
+                            .whenComplete((v, error) -> timer.stop(error == null ? getJarPath(dependency).toFile().length() : 0))
+                            .thenRun(() -> recordSnapshot(dependency, downloadUrl));
+                });
+        if (dependency.getRelocations().isEmpty()) {
+            return download.thenApply(v -> index(getJarPath(dependency).toFile()));
+        }
+        return download.thenApplyAsync(v -> index(relocate(dependency)), relocationExecutor);
+    }
+
+    // the class index is built once, right after the jar is downloaded or relocated
+    private static File index(File jar) {
+        try {
+            ClassIndex.of(jar);
+        } catch (IOException e) {
+            logger.warn("Failed to index classes of {}, caused by: {}", jar, e.getMessage());
+        }
+        return jar;
+    }
+
+    private static File relocate(Dependency dependency) {
+        Path path = getJarPath(dependency);
+        File relocated = path.resolveSibling(dependency.getArtifactId() + "-" + dependency.getVersion() + "-relocated.jar").toFile();
+        Metrics.Timer timer = Metrics.start(Phase.RELOCATION, dependency.getLocation());
+        try {
+            return RelocationUtil.relocate(path.toFile(), relocated, dependency, IntegrityIndex.of(libDir));
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static File await(CompletableFuture<File> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to prepare dependency", cause);
+        }
+    }
+
+    // verifies every locked jar before loading any of them, so a stale lockfile can still fall back to resolving
+    private static boolean loadLocked(Dependency root, LockedRoot locked, LoadContext context) throws IOException, InterruptedException {
+        List<Dependency> lockedDependencies = new ArrayList<>();
+        for (LockedArtifact artifact : locked.getArtifacts()) {
+            // a ranged root is locked under the version it resolved to
+            boolean isRoot = artifact.getGroupId().equals(root.getGroupId()) && artifact.getArtifactId().equals(root.getArtifactId());
+            Dependency dependency = isRoot ? root.withVersion(artifact.getVersion()) : Dependency.builder()
+                    .groupId(artifact.getGroupId())
+                    .artifactId(artifact.getArtifactId())
+                    .version(artifact.getVersion())
+                    .build();
+            if (!artifact.getDownloadUrl().isEmpty()) {
+                File jar = getJarPath(dependency).toFile();
+                if (!jar.isFile() || artifact.getSha1() == null || !artifact.getSha1().equals(sha1(jar))) {
+                    logger.info("Lockfile entry {} does not match {}, resolving again", artifact.getLocation(), jar);
+                    return false;
+                }
+            }
+            lockedDependencies.add(dependency);
+        }
+        List<CompletableFuture<File>> prepared = new ArrayList<>();
+        for (int i = 0; i < lockedDependencies.size(); i++) {
+            Dependency dependency = lockedDependencies.get(i);
+            prepared.add(dependency.checkHas(loaded) ? null : prepare(dependency, locked.getArtifacts().get(i).getDownloadUrl(), context));
+        }
+        List<File> files = new ArrayList<>();
+        DependencyRegistry loading = new DependencyRegistry();
+        int total = countToLoad(lockedDependencies);
+        for (int i = 0; i < lockedDependencies.size(); i++) {
+            Dependency dependency = lockedDependencies.get(i);
+            context.checkCancelled();
+            if (prepared.get(i) != null && !dependency.checkHas(loaded) && !dependency.checkHas(loading)) {
+                File file = await(prepared.get(i));
+                if (file != null) {
+                    load(file, files);
+                }
+                loading.add(dependency);
+                if (!bundleMode) {
+                    loaded.add(dependency);
                 }
-                loaded.add(dependency);
+                context.loaded(dependency, loading.size(), total);
+            }
+        }
+        loadBundle(root, files);
+        loaded.addAll(loading);
+        return true;
+    }
+
+    // the same checks as the load loops, so progress can report a total before the first jar is loaded
+    private static int countToLoad(List<Dependency> dependencies) {
+        DependencyRegistry pending = new DependencyRegistry();
+        for (Dependency dependency : dependencies) {
+            if (!dependency.checkHas(loaded) && !dependency.checkHas(pending)) {
+                pending.add(dependency);
             }
         }
+        return pending.size();
+    }
+
+    private static String checksum(Dependency dependency, String downloadUrl) throws IOException {
+        if (downloadUrl.isEmpty()) {
+            return null;
+        }
+        File jar = getJarPath(dependency).toFile();
+        return jar.isFile() ? sha1(jar) : null;
+    }
+
+    // O(1) for jars recorded in the integrity index, a full hash otherwise
+    private static String sha1(File jar) throws IOException {
+        String sha1 = IntegrityIndex.of(libDir).getSha1(jar);
+        return sha1 != null ? sha1 : HashUtil.sha1(jar);
+    }
+
+    private static synchronized LockFile getLockFile() {
+        File file = new File(libDir, LOCK_FILE_NAME);
+        if (lockFile == null || !lockFile.getFile().equals(file)) {
+            lockFile = LockFile.read(file);
+        }
+        return lockFile;
+    }
+
+    private static List<Repository> getResolveRepositories() {
+        if (!useMavenLocal) {
+            return repositories;
+        }
+        List<Repository> result = new ArrayList<>();
+        result.add(Repository.mavenLocal());
+        result.addAll(repositories);
+        return result;
+    }
+
+    private static Path getJarPath(Dependency dependency) {
+        return libDir.toPath()
+                .resolve(dependency.getGroupId())
+                .resolve(dependency.getArtifactId())
+                .resolve(dependency.getVersion())
+                .resolve(dependency.getArtifactId() + "-" + dependency.getVersion() + ".jar");
     }
 
     public static void loadDependency(Dependency dependency) throws IOException, InterruptedException {
+        loadDependency(dependency, new LoadContext(ProgressListener.NONE, null));
+    }
+
+    // roots are loaded one at a time, whether they come from the blocking or the async api
+    private static void loadDependency(Dependency dependency, LoadContext context) throws IOException, InterruptedException {
+        synchronized (loadLock) {
+            loadDependency0(dependency, context);
+        }
+    }
+
+    private static void loadDependency0(Dependency dependency, LoadContext context) throws IOException, InterruptedException {
+        context.checkCancelled();
         logger.info("Loading dependency: {}", dependency.toString());
-        DependencyNode node = PomParser.resolve(dependency, repositories);
+        List<String> repositoryUrls = repositories.stream().map(Repository::getUrl).collect(Collectors.toList());
+        String key = LockFile.key(dependency);
+        if (useLockFile) {
+            LockedRoot locked = getLockFile().find(key, repositoryUrls);
+            if (locked != null && loadLocked(dependency, locked, context)) {
+                logger.info("Loaded dependency {} from lockfile", dependency.getLocation());
+                return;
+            }
+        }
+        // downloads and relocations start while the rest of the graph is still being resolved
+        Map<String, CompletableFuture<File>> prepared = new ConcurrentHashMap<>();
+        Set<DependencyNode> resolvedNodes = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        DependencyNode node = PomParser.resolve(dependency, getResolveRepositories(), resolved -> {
+            resolvedNodes.add(resolved);
+            Dependency resolvedDependency = resolved.getDependency();
+            context.resolved(resolvedDependency);
+            if (!resolvedDependency.checkHas(loaded)) {
+                prepared.computeIfAbsent(resolvedDependency.getLocation(),
+                        location -> prepare(resolvedDependency, resolved.getDownloadUrl(), context));
+            }
+        });
+        context.checkCancelled();
+        List<DependencyNode> unresolved = PomParser.getAllNodes(Collections.singletonList(node)).stream()
+                .filter(resolvedNode -> !resolvedNodes.contains(resolvedNode))
+                .collect(Collectors.toList());
+        if (!unresolved.isEmpty() && HttpUtil.isOffline()) {
+            throw new IOException("Cannot load " + dependency.getLocation() + ", not available offline: " + unresolved.stream()
+                    .map(unresolvedNode -> unresolvedNode.getDependency().getLocation())
+                    .collect(Collectors.joining(", ")));
+        }
         dependencies.add(node);
-        load(node);
+        List<LockedArtifact> artifacts = load(node, prepared, context);
+        if (useLockFile) {
+            LockFile lock = getLockFile();
+            if (isComplete(node, unresolved, artifacts)) {
+                LockedRoot locked = new LockedRoot(key, repositoryUrls);
+                locked.getArtifacts().addAll(artifacts);
+                lock.put(locked);
+                lock.write();
+            } else if (lock.remove(key)) {
+                lock.write();
+            }
+        }
+    }
+
+    // a graph with unresolved poms or missing jars is not locked, the next start resolves it again
+    private static boolean isComplete(DependencyNode root, List<DependencyNode> unresolved, List<LockedArtifact> artifacts) {
+        if (!unresolved.isEmpty()) {
+            logger.warn("Not locking {}, {} was not resolved", root.getDependency().getLocation(), unresolved.get(0).getDependency().getLocation());
+            return false;
+        }
+        for (LockedArtifact artifact : artifacts) {
+            if (!artifact.getDownloadUrl().isEmpty() && artifact.getSha1() == null) {
+                logger.warn("Not locking {}, {} has no verified jar", root.getDependency().getLocation(), artifact.getDownloadUrl());
+                return false;
+            }
+        }
+        return true;
     }
     
     public static List<Class<?>> searchClasses(String prefix) throws IOException, ClassNotFoundException {
         List<Class<?>> classes = new ArrayList<>();
         for (Dependency dependency : loaded) {
-            String fileName = dependency.getArtifactId() + "-" + dependency.getVersion();
-            Path path = libDir.toPath()
-                    .resolve(dependency.getGroupId())
-                    .resolve(dependency.getArtifactId())
-                    .resolve(dependency.getVersion())
-                    .resolve(fileName + ".jar");
-            if (!path.toFile().exists()) {
-                path = libDir.toPath()
-                        .resolve(dependency.getGroupId())
-                        .resolve(dependency.getArtifactId())
-                        .resolve(dependency.getVersion())
-                        .resolve(fileName + "-relocated.jar");
-                if (!path.toFile().exists()) {
-                    continue;
-                }
-            }
-            File jarFile = path.toFile();
-            // 读取 jarFile 所有类
-            try (JarFile jar = new JarFile(jarFile)) {
-                Enumeration<JarEntry> entries = jar.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    if (entry.getName().endsWith(".class")) {
-                        String className = entry.getName()
-                                .replace("/", ".")
-                                .replace(".class", "");
-                        if (className.startsWith(prefix)) classes.add(Class.forName(className));
-                    }
-                }
-            }
+            classes.addAll(searchClasses(dependency, prefix));
         }
         return classes;
     }
 
     public static List<Class<?>> searchClasses(Dependency dependency, String prefix) throws IOException, ClassNotFoundException {
         List<Class<?>> classes = new ArrayList<>();
-        String fileName = dependency.getArtifactId() + "-" + dependency.getVersion();
-        Path path = libDir.toPath()
-                .resolve(dependency.getGroupId())
-                .resolve(dependency.getArtifactId())
-                .resolve(dependency.getVersion())
-                .resolve(fileName + ".jar");
-        if (!path.toFile().exists()) {
-            path = libDir.toPath()
-                    .resolve(dependency.getGroupId())
-                    .resolve(dependency.getArtifactId())
-                    .resolve(dependency.getVersion())
-                    .resolve(fileName + "-relocated.jar");
-            if (!path.toFile().exists()) {
-                return classes;
-            }
-        }
-        File jarFile = path.toFile();
-        try (JarFile jar = new JarFile(jarFile)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if (entry.getName().endsWith(".class")) {
-                    String className = entry.getName()
-                            .replace("/", ".")
-                            .replace(".class", "");
-                    if (className.startsWith(prefix)) classes.add(Class.forName(className));
-                }
-            }
+        for (String className : searchClassNames(dependency, prefix)) {
+            classes.add(Class.forName(className, true, loader.getTargetClassLoader()));
         }
         return classes;
     }
 
+    /**
+     * Finds class names in every loaded jar without loading any class.
+     */
+    public static List<String> searchClassNames(String prefix) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        for (Dependency dependency : loaded) {
+            classNames.addAll(searchClassNames(dependency, prefix));
+        }
+        return classNames;
+    }
+
+    public static List<String> searchClassNames(Dependency dependency, String prefix) throws IOException {
+        File jar = findJar(dependency);
+        if (jar == null) {
+            return Collections.emptyList();
+        }
+        return ClassIndex.of(jar).search(prefix);
+    }
+
+    /**
+     * Streams the classes of every loaded jar straight from their central directories, in parallel and without
+     * building an index. The visitor may be called concurrently and stops the scan by returning false.
+     */
+    public static void scanClasses(String prefix, JarScanner.EntryVisitor visitor) {
+        List<File> jars = new ArrayList<>();
+        for (Dependency dependency : loaded) {
+            File jar = findJar(dependency);
+            if (jar != null) jars.add(jar);
+        }
+        JarScanner.scanClasses(jars, prefix, visitor);
+    }
+
+    /**
+     * Like {@link #searchClasses(String)}, but returns handles that load a class (without initializing it) only when asked.
+     */
+    public static List<ClassHandle> searchClassHandles(String prefix) throws IOException {
+        ClassLoader classLoader = loader.getTargetClassLoader();
+        return searchClassNames(prefix).stream()
+                .map(name -> new ClassHandle(name, classLoader))
+                .collect(Collectors.toList());
+    }
+
+    public static List<ClassHandle> searchClassHandles(Dependency dependency, String prefix) throws IOException {
+        ClassLoader classLoader = loader.getTargetClassLoader();
+        return searchClassNames(dependency, prefix).stream()
+                .map(name -> new ClassHandle(name, classLoader))
+                .collect(Collectors.toList());
+    }
+
+    private static File findJar(Dependency dependency) {
+        Path path = getJarPath(dependency);
+        if (path.toFile().exists()) {
+            return path.toFile();
+        }
+        path = path.resolveSibling(dependency.getArtifactId() + "-" + dependency.getVersion() + "-relocated.jar");
+        return path.toFile().exists() ? path.toFile() : null;
+    }
+
     public static void loadDependencies(Collection<Dependency> dependencies) throws IOException, InterruptedException {
         for (Dependency dependency : dependencies) {
             loadDependency(dependency);
         }
     }
 
-    private static boolean hasDownloaded(Dependency dependency) {
-        Path path = libDir.toPath()
-                .resolve(dependency.getGroupId())
-                .resolve(dependency.getArtifactId())
-                .resolve(dependency.getVersion())
-                .resolve(dependency.getArtifactId() + "-" + dependency.getVersion() + ".jar");
-        if (path.toFile().exists()) {
+    public static CompletableFuture<Void> loadDependencyAsync(Dependency dependency) {
+        return loadDependenciesAsync(Collections.singletonList(dependency), ProgressListener.NONE);
+    }
+
+    public static CompletableFuture<Void> loadDependenciesAsync(Collection<Dependency> dependencies) {
+        return loadDependenciesAsync(dependencies, ProgressListener.NONE);
+    }
+
+    /**
+     * Loads {@code dependencies} on JarFlow's own loader thread without blocking the caller. Cancelling the
+     * returned future stops resolving and downloading; roots that were already loaded stay loaded and partial
+     * downloads are resumed by the next load.
+     */
+    public static CompletableFuture<Void> loadDependenciesAsync(Collection<Dependency> dependencies, ProgressListener listener) {
+        List<Dependency> roots = new ArrayList<>(dependencies);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        LoadContext context = new LoadContext(listener, result);
+        Future<?> task = loadExecutor.submit(() -> {
+            try {
+                for (int i = 0; i < roots.size(); i++) {
+                    loadDependency(roots.get(i), context);
+                    listener.onRootLoaded(roots.get(i), i + 1, roots.size());
+                }
+                result.complete(null);
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            } catch (Throwable e) {
+                if (!(e instanceof CancellationException)) {
+                    logger.error("Failed to load dependencies", e);
+                }
+                result.completeExceptionally(e);
+            }
+        });
+        // interrupting the loader thread wakes it up from waiting on downloads
+        result.whenComplete((v, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static boolean hasDownloaded(Dependency dependency, String downloadUrl) throws IOException {
+        File jar = getJarPath(dependency).toFile();
+        if (!jar.isFile()) {
+            return false;
+        }
+        if (MetadataResolver.isSnapshot(dependency.getVersion()) && !isCurrentSnapshot(dependency, downloadUrl)) {
+            logger.debug("{} has a newer build, downloading it again", dependency.getLocation());
+            return false;
+        }
+        // also unverified jars: a repository without checksums or an offline start would otherwise hash them every time
+        if (IntegrityIndex.of(libDir).isUnchanged(jar)) {
             return true;
         }
-        return false;
+        // jars from before the index existed, or changed since, are checked once against the published checksum
+        return DependencyDownloader.verifyExisting(downloadUrl, jar, libDir);
+    }
+
+    private static boolean isCurrentSnapshot(Dependency dependency, String downloadUrl) {
+        return fileVersion(dependency, downloadUrl).equals(SnapshotBuilds.read(libDir, dependency));
+    }
+
+    private static void recordSnapshot(Dependency dependency, String downloadUrl) {
+        if (!MetadataResolver.isSnapshot(dependency.getVersion())) {
+            return;
+        }
+        try {
+            SnapshotBuilds.write(libDir, dependency, fileVersion(dependency, downloadUrl));
+        } catch (IOException e) {
+            logger.warn("Failed to record the build of {}, caused by: {}", dependency.getLocation(), e.getMessage());
+        }
+    }
+
+    // <repository>/<path>/<artifact>-<file version>.jar
+    private static String fileVersion(Dependency dependency, String downloadUrl) {
+        String name = downloadUrl.substring(downloadUrl.lastIndexOf('/') + 1);
+        return name.substring(dependency.getArtifactId().length() + 1, name.length() - ".jar".length());
+    }
+
+    private static class LoadContext {
+        private final ProgressListener listener;
+        private final CompletableFuture<Void> result;
+        private final AtomicInteger resolved = new AtomicInteger();
+        private final AtomicLong downloaded = new AtomicLong();
+
+        private LoadContext(ProgressListener listener, CompletableFuture<Void> result) {
+            this.listener = listener;
+            this.result = result;
+        }
+
+        private void checkCancelled() {
+            if (result != null && result.isCancelled()) {
+                throw new CancellationException("Loading was cancelled");
+            }
+        }
+
+        private void resolved(Dependency dependency) {
+            checkCancelled();
+            listener.onResolved(dependency, resolved.incrementAndGet());
+        }
+
+        private DownloadListener downloadListener(Dependency dependency) {
+            return bytes -> {
+                checkCancelled();
+                listener.onDownloaded(dependency, bytes, downloaded.addAndGet(bytes));
+            };
+        }
+
+        private void loaded(Dependency dependency, int loaded, int total) {
+            listener.onLoaded(dependency, loaded, total);
+        }
     }
 }
@@ -0,0 +1,37 @@
+package dev.neovoxel.jarflow;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+
+/**
+ * Progress of {@link JarFlow#loadDependenciesAsync(java.util.Collection, ProgressListener)}. Callbacks may come
+ * from resolver and download threads concurrently and should return quickly.
+ */
+public interface ProgressListener {
+
+    ProgressListener NONE = new ProgressListener() {};
+
+    /**
+     * The pom of {@code dependency} has been read; {@code resolved} poms have been read so far.
+     */
+    default void onResolved(Dependency dependency, int resolved) {
+    }
+
+    /**
+     * {@code bytes} more bytes of {@code dependency} were written; {@code totalBytes} is the sum over the whole load.
+     */
+    default void onDownloaded(Dependency dependency, long bytes, long totalBytes) {
+    }
+
+    /**
+     * The jar of {@code dependency} was handed to the loader, or to the root's bundle in bundle mode, the
+     * {@code loaded}-th of {@code total} for its root.
+     */
+    default void onLoaded(Dependency dependency, int loaded, int total) {
+    }
+
+    /**
+     * Root {@code dependency} and its graph are loaded, the {@code loaded}-th of {@code total} roots.
+     */
+    default void onRootLoaded(Dependency dependency, int loaded, int total) {
+    }
+}
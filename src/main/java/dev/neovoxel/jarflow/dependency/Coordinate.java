@@ -0,0 +1,82 @@
+package dev.neovoxel.jarflow.dependency;
+
+import lombok.Getter;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * Interned {@code groupId:artifactId:version} triple. Equal coordinates that are alive at the same time are the
+ * same instance, so they can be compared with {@code ==} and used as map keys without building strings; the
+ * version is null for version-less keys such as {@code groupId:artifactId}. The interner only holds coordinates
+ * weakly, so the ones no dependency refers to any more can be collected.
+ */
+@Getter
+public final class Coordinate {
+
+    private static final Map<Coordinate, WeakReference<Coordinate>> interned = new WeakHashMap<>();
+
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final String version;
+
+    private final int hash;
+
+    private volatile String location;
+
+    private Coordinate(String groupId, String artifactId, String version) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.hash = Objects.hash(groupId, artifactId, version);
+    }
+
+    public static Coordinate of(String groupId, String artifactId, String version) {
+        Coordinate coordinate = new Coordinate(groupId, artifactId, version);
+        synchronized (interned) {
+            WeakReference<Coordinate> reference = interned.get(coordinate);
+            Coordinate existing = reference == null ? null : reference.get();
+            if (existing != null) {
+                return existing;
+            }
+            interned.put(coordinate, new WeakReference<>(coordinate));
+            return coordinate;
+        }
+    }
+
+    public static Coordinate of(String groupId, String artifactId) {
+        return of(groupId, artifactId, null);
+    }
+
+    public Coordinate withoutVersion() {
+        return version == null ? this : of(groupId, artifactId, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Coordinate)) return false;
+        Coordinate other = (Coordinate) o;
+        return hash == other.hash && groupId.equals(other.groupId) && artifactId.equals(other.artifactId)
+                && Objects.equals(version, other.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        String result = location;
+        if (result == null) {
+            result = version == null ? groupId + ":" + artifactId : groupId + ":" + artifactId + ":" + version;
+            location = result;
+        }
+        return result;
+    }
+}
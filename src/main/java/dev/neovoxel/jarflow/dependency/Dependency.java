@@ -26,6 +26,10 @@ public class Dependency {
     private final String version;
 
     @NotNull
+    private final List<RelocationRule> relocationRules = new ArrayList<>();
+
+    @NotNull
+    @ToString.Exclude
     private final List<Relocation> relocations = new ArrayList<>();
 
     @NotNull
@@ -34,11 +38,17 @@ public class Dependency {
     @NotNull
     private final List<Repository> repositories = new ArrayList<>();
 
-    protected Dependency(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @NotNull List<Relocation> relocations, @NotNull List<Exclusion> exclusions, @NotNull List<Repository> repositories) {
+    @ToString.Exclude
+    private volatile Coordinate coordinate;
+
+    protected Dependency(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @NotNull List<RelocationRule> relocationRules, @NotNull List<Exclusion> exclusions, @NotNull List<Repository> repositories) {
         this.groupId = groupId;
         this.artifactId = artifactId;
         this.version = version;
-        this.relocations.addAll(relocations);
+        this.relocationRules.addAll(relocationRules);
+        for (RelocationRule rule : relocationRules) {
+            this.relocations.add(rule.toRelocation());
+        }
         this.exclusions.addAll(exclusions);
         this.repositories.addAll(repositories);
     }
@@ -54,8 +64,27 @@ public class Dependency {
         return false;
     }
 
+    /**
+     * Returns a copy pinned to {@code version}, keeping relocations, exclusions and repositories.
+     */
+    public Dependency withVersion(String version) {
+        if (version.equals(this.version)) {
+            return this;
+        }
+        return new Dependency(groupId, artifactId, version, relocationRules, exclusions, repositories);
+    }
+
+    public Coordinate getCoordinate() {
+        Coordinate result = coordinate;
+        if (result == null) {
+            result = Coordinate.of(groupId, artifactId, version);
+            coordinate = result;
+        }
+        return result;
+    }
+
     public String getLocation() {
-        return groupId + ":" + artifactId + ":" + version;
+        return getCoordinate().toString();
     }
 
     public String getUrlLocation() {
@@ -95,9 +124,14 @@ public class Dependency {
     }
 
     public boolean checkHas(Collection<Dependency> dependencies) {
+        Coordinate coordinate = getCoordinate();
         for (Dependency dependency : dependencies) {
-            if (dependency.getLocation().equals(this.getLocation())) return true;
+            if (dependency.getCoordinate().equals(coordinate)) return true;
         }
         return false;
     }
+
+    public boolean checkHas(DependencyRegistry registry) {
+        return registry.contains(this);
+    }
 }
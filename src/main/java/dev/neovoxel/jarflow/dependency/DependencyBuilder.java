@@ -1,15 +1,14 @@
 package dev.neovoxel.jarflow.dependency;
 
-import me.lucko.jarrelocator.Relocation;
-
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class DependencyBuilder {
     private String groupId;
     private String artifactId;
     private String version;
-    private final List<Relocation> relocations = new ArrayList<>();
+    private final List<RelocationRule> relocations = new ArrayList<>();
     private final List<Exclusion> exclusions = new ArrayList<>();
 
     protected DependencyBuilder() {
@@ -52,7 +51,12 @@ public class DependencyBuilder {
     }
 
     public DependencyBuilder relocate(String from, String to) {
-        this.relocations.add(new Relocation(from, to));
+        this.relocations.add(new RelocationRule(from, to));
+        return this;
+    }
+
+    public DependencyBuilder relocate(String from, String to, Collection<String> includes, Collection<String> excludes) {
+        this.relocations.add(new RelocationRule(from, to, includes, excludes));
         return this;
     }
 
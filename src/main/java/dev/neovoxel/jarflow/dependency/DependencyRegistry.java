@@ -0,0 +1,60 @@
+package dev.neovoxel.jarflow.dependency;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe set of dependencies keyed by {@link Coordinate}, iterated in the order they were added.
+ */
+public class DependencyRegistry implements Iterable<Dependency> {
+
+    private final ConcurrentHashMap<Coordinate, Dependency> byCoordinate = new ConcurrentHashMap<>();
+
+    private final Queue<Dependency> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Returns false if a dependency with the same coordinate is already registered.
+     */
+    public boolean add(Dependency dependency) {
+        if (byCoordinate.putIfAbsent(dependency.getCoordinate(), dependency) != null) {
+            return false;
+        }
+        order.add(dependency);
+        return true;
+    }
+
+    public void addAll(Iterable<Dependency> dependencies) {
+        for (Dependency dependency : dependencies) {
+            add(dependency);
+        }
+    }
+
+    public boolean contains(Dependency dependency) {
+        return byCoordinate.containsKey(dependency.getCoordinate());
+    }
+
+    public boolean contains(Coordinate coordinate) {
+        return byCoordinate.containsKey(coordinate);
+    }
+
+    public Dependency get(Coordinate coordinate) {
+        return byCoordinate.get(coordinate);
+    }
+
+    public int size() {
+        return byCoordinate.size();
+    }
+
+    public List<Dependency> toList() {
+        return new ArrayList<>(order);
+    }
+
+    @Override
+    public Iterator<Dependency> iterator() {
+        return toList().iterator();
+    }
+}
@@ -0,0 +1,44 @@
+package dev.neovoxel.jarflow.dependency;
+
+import lombok.Getter;
+import me.lucko.jarrelocator.Relocation;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The settings a {@link Relocation} is built from. {@link Relocation} exposes none of them, so dependencies keep
+ * the rule itself to describe their relocations in cache and lock file keys.
+ */
+@Getter
+public class RelocationRule {
+    @NotNull
+    private final String pattern;
+
+    @NotNull
+    private final String relocatedPattern;
+
+    @NotNull
+    private final Set<String> includes;
+
+    @NotNull
+    private final Set<String> excludes;
+
+    public RelocationRule(@NotNull String pattern, @NotNull String relocatedPattern) {
+        this(pattern, relocatedPattern, Collections.emptySet(), Collections.emptySet());
+    }
+
+    public RelocationRule(@NotNull String pattern, @NotNull String relocatedPattern, @NotNull Collection<String> includes, @NotNull Collection<String> excludes) {
+        this.pattern = pattern;
+        this.relocatedPattern = relocatedPattern;
+        this.includes = Collections.unmodifiableSet(new TreeSet<>(includes));
+        this.excludes = Collections.unmodifiableSet(new TreeSet<>(excludes));
+    }
+
+    public Relocation toRelocation() {
+        return new Relocation(pattern, relocatedPattern, includes, excludes);
+    }
+}
@@ -0,0 +1,34 @@
+package dev.neovoxel.jarflow.index;
+
+import lombok.Getter;
+
+/**
+ * A class found by a search that has not been loaded yet.
+ */
+public class ClassHandle {
+    @Getter
+    private final String name;
+
+    private final ClassLoader classLoader;
+
+    public ClassHandle(String name, ClassLoader classLoader) {
+        this.name = name;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Loads the class without running its static initializers.
+     */
+    public Class<?> load() throws ClassNotFoundException {
+        return Class.forName(name, false, classLoader);
+    }
+
+    public Class<?> load(boolean initialize) throws ClassNotFoundException {
+        return Class.forName(name, initialize, classLoader);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
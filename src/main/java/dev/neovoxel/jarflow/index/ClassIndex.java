@@ -0,0 +1,163 @@
+package dev.neovoxel.jarflow.index;
+
+import dev.neovoxel.jarflow.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Sorted class names of one jar, stored next to it as {@code <jar>.classes} so later searches never have to open
+ * the jar. The first line records the size and modification time of the jar the index was built from.
+ */
+public class ClassIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Index");
+
+    private static final String SUFFIX = ".classes";
+
+    private static final Map<String, ClassIndex> cache = new ConcurrentHashMap<>();
+
+    private final long jarSize;
+
+    private final long jarModified;
+
+    private final String[] classNames;
+
+    private ClassIndex(long jarSize, long jarModified, String[] classNames) {
+        this.jarSize = jarSize;
+        this.jarModified = jarModified;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Returns the index of {@code jar}, reading it from disk or (re)building it when it is missing or stale.
+     */
+    public static ClassIndex of(File jar) throws IOException {
+        String key = jar.getAbsolutePath();
+        ClassIndex index = cache.get(key);
+        if (index != null && index.matches(jar)) {
+            return index;
+        }
+        index = read(jar);
+        if (index == null) {
+            index = build(jar);
+            write(jar, index);
+        }
+        cache.put(key, index);
+        return index;
+    }
+
+    public static File getIndexFile(File jar) {
+        return new File(jar.getParentFile(), jar.getName() + SUFFIX);
+    }
+
+    public int size() {
+        return classNames.length;
+    }
+
+    /**
+     * Returns the class names starting with {@code prefix} in sorted order.
+     */
+    public List<String> search(String prefix) {
+        int from = lowerBound(prefix);
+        int to = from;
+        while (to < classNames.length && classNames[to].startsWith(prefix)) {
+            to++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(classNames).subList(from, to));
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = classNames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (classNames[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean matches(File jar) {
+        return jar.length() == jarSize && jar.lastModified() == jarModified;
+    }
+
+    private static ClassIndex build(File jar) throws IOException {
+        List<String> names = new ArrayList<>();
+        try {
+            JarScanner.scanClasses(jar, new byte[0], (file, name) -> names.add(name.toClassName()));
+        } catch (IOException e) {
+            // archives the scanner cannot parse are still readable through JarFile
+            logger.debug("Falling back to JarFile for {}, caused by: {}", jar, e.getMessage());
+            names.clear();
+            try (JarFile jarFile = new JarFile(jar)) {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(".class")) {
+                        names.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        String[] classNames = names.toArray(new String[0]);
+        Arrays.sort(classNames);
+        return new ClassIndex(jar.length(), jar.lastModified(), classNames);
+    }
+
+    private static ClassIndex read(File jar) {
+        File file = getIndexFile(jar);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] header = reader.readLine().split("\t");
+            ClassIndex stamp = new ClassIndex(Long.parseLong(header[0]), Long.parseLong(header[1]), new String[0]);
+            if (!stamp.matches(jar)) {
+                return null;
+            }
+            List<String> names = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) names.add(line);
+            }
+            return new ClassIndex(stamp.jarSize, stamp.jarModified, names.toArray(new String[0]));
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Rebuilding unreadable class index {}, caused by: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(File jar, ClassIndex index) {
+        Path target = getIndexFile(jar).toPath();
+        try {
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    writer.write(index.jarSize + "\t" + index.jarModified);
+                    writer.newLine();
+                    for (String name : index.classNames) {
+                        writer.write(name);
+                        writer.newLine();
+                    }
+                }
+                FileUtil.moveAtomically(temp, target);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write class index {}, caused by: {}", target, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package dev.neovoxel.jarflow.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scans jars by reading their ZIP central directory in one positional read. Entry names are matched on their raw
+ * bytes and handed to the visitor through a reused view, so a scan allocates nothing per entry unless the visitor
+ * asks for a String. Nothing is memory-mapped, since a mapping keeps the jar locked on Windows until it is
+ * garbage collected.
+ */
+public class JarScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Scanner");
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final byte[] CLASS_SUFFIX = ".class".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public interface EntryVisitor {
+        /**
+         * Called for every matching entry, possibly from several threads at once. {@code name} is only valid
+         * during the call. Returning false stops the whole scan.
+         */
+        boolean visit(File jar, EntryName name);
+    }
+
+    /**
+     * Visits the {@code .class} entries of {@code jars} whose class name starts with {@code prefix}, scanning the
+     * jars in parallel.
+     */
+    public static void scanClasses(Collection<File> jars, String prefix, EntryVisitor visitor) {
+        byte[] prefixBytes = prefix.replace('.', '/').getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean stopped = new AtomicBoolean();
+        pool.invoke(new ScanTask(new ArrayList<>(jars), prefixBytes, visitor, stopped));
+    }
+
+    /**
+     * Returns the sorted class names in {@code jars} starting with {@code prefix}.
+     */
+    public static List<String> findClassNames(Collection<File> jars, String prefix) {
+        Queue<String> names = new ConcurrentLinkedQueue<>();
+        scanClasses(jars, prefix, (jar, name) -> names.add(name.toClassName()));
+        List<String> result = new ArrayList<>(names);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Visits the {@code .class} entries of a single jar on the calling thread. Returns false if the visitor stopped.
+     */
+    public static boolean scanClasses(File jar, byte[] prefix, EntryVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT + 20);
+            ByteBuffer tail = read(channel, size - tailSize, tailSize);
+            int eocd = findEndOfCentralDirectory(tail);
+            if (eocd < 0) {
+                throw new IOException("Not a zip file: " + jar);
+            }
+            long entries = tail.getShort(eocd + 10) & 0xFFFF;
+            long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+                // zip64: the real values live in the zip64 end of central directory record
+                int locator = eocd - 20;
+                if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+                    throw new IOException("Broken zip64 archive: " + jar);
+                }
+                long recordOffset = tail.getLong(locator + 8);
+                ByteBuffer record = read(channel, recordOffset, 56);
+                if (record.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                    throw new IOException("Broken zip64 archive: " + jar);
+                }
+                entries = record.getLong(32);
+                directorySize = record.getLong(40);
+                directoryOffset = record.getLong(48);
+            }
+            if (directorySize > Integer.MAX_VALUE) {
+                throw new IOException("Central directory too large: " + jar);
+            }
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            EntryName name = new EntryName(directory);
+            int position = 0;
+            for (long i = 0; i < entries && position + 46 <= directory.limit(); i++) {
+                if (directory.getInt(position) != CENTRAL_SIGNATURE) {
+                    throw new IOException("Corrupt central directory in " + jar);
+                }
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                name.reset(position + 46, nameLength);
+                if (name.startsWith(prefix) && name.endsWith(CLASS_SUFFIX) && !visitor.visit(jar, name)) {
+                    return false;
+                }
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+            return true;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail) {
+        for (int position = tail.limit() - EOCD_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == EOCD_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * View of an entry name inside the central directory buffer.
+     */
+    public static final class EntryName {
+        private final ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        private EntryName(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void reset(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public byte byteAt(int index) {
+            return buffer.get(offset + index);
+        }
+
+        public boolean startsWith(byte[] prefix) {
+            if (prefix.length > length) return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (buffer.get(offset + i) != prefix[i]) return false;
+            }
+            return true;
+        }
+
+        public boolean endsWith(byte[] suffix) {
+            if (suffix.length > length) return false;
+            int start = offset + length - suffix.length;
+            for (int i = 0; i < suffix.length; i++) {
+                if (buffer.get(start + i) != suffix[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Converts {@code com/example/Foo.class} into {@code com.example.Foo}.
+         */
+        public String toClassName() {
+            int nameLength = endsWith(CLASS_SUFFIX) ? length - CLASS_SUFFIX.length : length;
+            char[] chars = new char[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                byte b = buffer.get(offset + i);
+                if (b < 0) {
+                    // not ascii, let the decoder deal with it
+                    String decoded = toString();
+                    return decoded.substring(0, decoded.length() - (length - nameLength)).replace('/', '.');
+                }
+                chars[i] = b == '/' ? '.' : (char) b;
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class ScanTask extends RecursiveAction {
+        private final List<File> jars;
+        private final byte[] prefix;
+        private final EntryVisitor visitor;
+        private final AtomicBoolean stopped;
+
+        private ScanTask(List<File> jars, byte[] prefix, EntryVisitor visitor, AtomicBoolean stopped) {
+            this.jars = jars;
+            this.prefix = prefix;
+            this.visitor = visitor;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped.get() || jars.isEmpty()) {
+                return;
+            }
+            if (jars.size() > 1) {
+                int middle = jars.size() / 2;
+                invokeAll(new ScanTask(jars.subList(0, middle), prefix, visitor, stopped),
+                        new ScanTask(jars.subList(middle, jars.size()), prefix, visitor, stopped));
+                return;
+            }
+            File jar = jars.get(0);
+            try {
+                boolean completed = scanClasses(jar, prefix, (file, name) -> !stopped.get() && visitor.visit(file, name));
+                if (!completed) {
+                    stopped.set(true);
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to scan {}, caused by: {}", jar, e.getMessage());
+            }
+        }
+    }
+}
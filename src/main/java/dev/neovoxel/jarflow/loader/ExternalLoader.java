@@ -45,4 +45,11 @@ public class ExternalLoader {
             throw new RuntimeException("Failed to append JAR to class path: " + file.getName(), e);
         }
     }
+
+    /**
+     * The class loader that can see the jars passed to {@link #load(File)}.
+     */
+    public ClassLoader getTargetClassLoader() {
+        return ClassLoader.getSystemClassLoader();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package dev.neovoxel.jarflow.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Class loader that maps every package directory to the jars containing it, so a lookup only touches the jars
+ * that can actually hold the class or resource instead of walking the whole classpath.
+ */
+public class IndexedClassLoader extends ClassLoader implements Closeable {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final Map<String, List<IndexedJar>> packages = new ConcurrentHashMap<>();
+
+    private final List<IndexedJar> jars = new CopyOnWriteArrayList<>();
+
+    public IndexedClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    /**
+     * Opens {@code file} and indexes its directories. Jars added earlier win when several contain the same entry.
+     */
+    public void addJar(File file) throws IOException {
+        IndexedJar jar = new IndexedJar(file);
+        Set<String> directories = new HashSet<>();
+        Enumeration<JarEntry> entries = jar.jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                directories.add(directoryOf(entry.getName()));
+            }
+        }
+        jars.add(jar);
+        for (String directory : directories) {
+            packages.computeIfAbsent(directory, key -> new CopyOnWriteArrayList<>()).add(jar);
+        }
+    }
+
+    public List<File> getJars() {
+        List<File> files = new ArrayList<>();
+        for (IndexedJar jar : jars) {
+            files.add(jar.file);
+        }
+        return files;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        for (IndexedJar jar : packages.getOrDefault(directoryOf(path), Collections.emptyList())) {
+            JarEntry entry = jar.jarFile.getJarEntry(path);
+            if (entry == null) continue;
+            try {
+                byte[] bytes = read(jar.jarFile, entry);
+                definePackageIfNeeded(name);
+                CodeSource source = new CodeSource(jar.url, entry.getCodeSigners());
+                return defineClass(name, bytes, 0, bytes.length, new ProtectionDomain(source, null, this, null));
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        for (IndexedJar jar : packages.getOrDefault(directoryOf(name), Collections.emptyList())) {
+            if (jar.jarFile.getEntry(name) != null) {
+                return jar.entryUrl(name);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> urls = new ArrayList<>();
+        for (IndexedJar jar : packages.getOrDefault(directoryOf(name), Collections.emptyList())) {
+            if (jar.jarFile.getEntry(name) != null) {
+                urls.add(jar.entryUrl(name));
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (IndexedJar jar : jars) {
+            jar.jarFile.close();
+        }
+        jars.clear();
+        packages.clear();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void definePackageIfNeeded(String className) {
+        int index = className.lastIndexOf('.');
+        if (index < 0) return;
+        String packageName = className.substring(0, index);
+        if (getPackage(packageName) != null) return;
+        try {
+            definePackage(packageName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException ignored) {
+            // defined concurrently by another thread
+        }
+    }
+
+    private static String directoryOf(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
+    private static byte[] read(JarFile jarFile, JarEntry entry) throws IOException {
+        try (InputStream input = jarFile.getInputStream(entry)) {
+            long size = entry.getSize();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(size > 0 ? (int) size : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    private static class IndexedJar {
+        private final File file;
+        private final JarFile jarFile;
+        private final URL url;
+
+        private IndexedJar(File file) throws IOException {
+            this.file = file;
+            this.jarFile = new JarFile(file);
+            this.url = file.toURI().toURL();
+        }
+
+        private URL entryUrl(String name) {
+            try {
+                return new URL("jar:" + url + "!/" + name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+    }
+}
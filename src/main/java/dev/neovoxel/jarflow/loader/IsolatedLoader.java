@@ -0,0 +1,42 @@
+package dev.neovoxel.jarflow.loader;
+
+import dev.neovoxel.jarflow.JarFlow;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads dependencies into a dedicated {@link IndexedClassLoader} instead of appending them to the system class
+ * path, so no agent has to be attached. Classes must be looked up through {@link #getTargetClassLoader()}.
+ */
+public class IsolatedLoader extends ExternalLoader {
+
+    @Getter
+    private final IndexedClassLoader indexedClassLoader;
+
+    public IsolatedLoader() {
+        this(JarFlow.class.getClassLoader());
+    }
+
+    public IsolatedLoader(ClassLoader parent) {
+        this.indexedClassLoader = new IndexedClassLoader(parent);
+    }
+
+    @Override
+    public void load(File file) {
+        if (!file.exists()) {
+            throw new IllegalArgumentException("File does not exist: " + file.getAbsolutePath());
+        }
+        try {
+            indexedClassLoader.addJar(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to add JAR to class loader: " + file.getName(), e);
+        }
+    }
+
+    @Override
+    public ClassLoader getTargetClassLoader() {
+        return indexedClassLoader;
+    }
+}
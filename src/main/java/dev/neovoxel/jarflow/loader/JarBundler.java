@@ -0,0 +1,219 @@
+package dev.neovoxel.jarflow.loader;
+
+import dev.neovoxel.jarflow.util.FileUtil;
+import dev.neovoxel.jarflow.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.*;
+
+/**
+ * Merges a list of jars into one bundle jar so the loader only has to open a single file. The first jar containing
+ * an entry wins, {@code META-INF/services} files are concatenated in jar order and signature files are dropped,
+ * since they would no longer match the merged contents. Manifests are merged: the bundle is multi-release if any
+ * input is, and each jar's package attributes (Implementation-*, Specification-*, Sealed) move to per-package
+ * sections so {@link Package} still reports the right versions.
+ */
+public class JarBundler {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Bundler");
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final Attributes.Name MULTI_RELEASE = new Attributes.Name("Multi-Release");
+
+    // main attributes that describe one jar, not the bundle
+    private static final Set<Attributes.Name> JAR_ONLY = new HashSet<>(Arrays.asList(
+            Attributes.Name.MANIFEST_VERSION, Attributes.Name.CLASS_PATH, Attributes.Name.MAIN_CLASS,
+            new Attributes.Name("Automatic-Module-Name"), MULTI_RELEASE));
+
+    private static final Set<Attributes.Name> PACKAGE_ATTRIBUTES = new HashSet<>(Arrays.asList(
+            Attributes.Name.IMPLEMENTATION_TITLE, Attributes.Name.IMPLEMENTATION_VERSION, Attributes.Name.IMPLEMENTATION_VENDOR,
+            Attributes.Name.SPECIFICATION_TITLE, Attributes.Name.SPECIFICATION_VERSION, Attributes.Name.SPECIFICATION_VENDOR,
+            Attributes.Name.SEALED));
+
+    /**
+     * Returns {@code <directory>/<name>-<hash>.jar} for {@code jars}, building it only if no bundle of exactly
+     * these jars (same paths, sizes and modification times, same order) exists yet. Building a new bundle deletes
+     * the older bundles of the same name.
+     */
+    public static File bundle(String name, List<File> jars, File directory) throws IOException {
+        File target = new File(directory, name + "-" + key(jars) + ".jar");
+        if (target.isFile()) {
+            logger.debug("Reusing bundle {}", target);
+            return target;
+        }
+        Files.createDirectories(directory.toPath());
+        Path temp = Files.createTempFile(directory.toPath(), target.getName(), ".tmp");
+        try {
+            write(jars, temp.toFile());
+            FileUtil.moveAtomically(temp, target.toPath());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.info("Bundled {} jars into {}", jars.size(), target.getName());
+        deleteOlder(name, target, directory);
+        return target;
+    }
+
+    // older bundles and their class indexes; a bundle still open on Windows is left for the next rebuild
+    private static void deleteOlder(String name, File current, File directory) {
+        File[] files = directory.listFiles((dir, file) -> file.startsWith(name + "-") && !file.startsWith(current.getName()));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.debug("Could not delete old bundle file {}", file);
+            }
+        }
+    }
+
+    private static String key(List<File> jars) {
+        StringBuilder builder = new StringBuilder();
+        for (File jar : jars) {
+            builder.append(jar.getAbsolutePath()).append('\t')
+                    .append(jar.length()).append('\t')
+                    .append(jar.lastModified()).append('\n');
+        }
+        return HashUtil.sha1(builder.toString()).substring(0, 16);
+    }
+
+    private static void write(List<File> jars, File output) throws IOException {
+        Set<String> written = new HashSet<>();
+        Map<String, Set<String>> services = new LinkedHashMap<>();
+        Manifest manifest = mergeManifests(jars);
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(output)), manifest)) {
+            written.add(JarFile.MANIFEST_NAME);
+            written.add("META-INF/");
+            byte[] buffer = new byte[8192];
+            for (File jar : jars) {
+                try (JarFile jarFile = new JarFile(jar)) {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry entry = entries.nextElement();
+                        String name = entry.getName();
+                        if (name.startsWith(SERVICES) && !entry.isDirectory()) {
+                            readServices(jarFile, entry, services.computeIfAbsent(name, key -> new LinkedHashSet<>()));
+                            continue;
+                        }
+                        if (isSignature(name) || !written.add(name)) {
+                            continue;
+                        }
+                        JarEntry copy = new JarEntry(name);
+                        copy.setTime(entry.getTime());
+                        out.putNextEntry(copy);
+                        if (!entry.isDirectory()) {
+                            try (InputStream in = jarFile.getInputStream(entry)) {
+                                int read;
+                                while ((read = in.read(buffer)) != -1) {
+                                    out.write(buffer, 0, read);
+                                }
+                            }
+                        }
+                        out.closeEntry();
+                    }
+                }
+            }
+            for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+                out.putNextEntry(new JarEntry(service.getKey()));
+                for (String provider : service.getValue()) {
+                    out.write((provider + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static Manifest mergeManifests(List<File> jars) throws IOException {
+        Manifest merged = new Manifest();
+        Attributes main = merged.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (File jar : jars) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                Manifest manifest = jarFile.getManifest();
+                if (manifest == null) {
+                    continue;
+                }
+                Attributes attributes = manifest.getMainAttributes();
+                if ("true".equalsIgnoreCase(attributes.getValue(MULTI_RELEASE))) {
+                    main.put(MULTI_RELEASE, "true");
+                }
+                Attributes packageAttributes = new Attributes();
+                for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+                    if (PACKAGE_ATTRIBUTES.contains(attribute.getKey())) {
+                        packageAttributes.put(attribute.getKey(), attribute.getValue());
+                    } else if (!JAR_ONLY.contains(attribute.getKey())) {
+                        main.putIfAbsent(attribute.getKey(), attribute.getValue());
+                    }
+                }
+                for (Map.Entry<String, Attributes> section : manifest.getEntries().entrySet()) {
+                    Attributes copy = withoutDigests(section.getValue());
+                    if (!copy.isEmpty()) {
+                        merged.getEntries().putIfAbsent(section.getKey(), copy);
+                    }
+                }
+                if (!packageAttributes.isEmpty()) {
+                    for (String packagePath : packages(jarFile)) {
+                        Attributes section = merged.getEntries().computeIfAbsent(packagePath, key -> new Attributes());
+                        for (Map.Entry<Object, Object> attribute : packageAttributes.entrySet()) {
+                            section.putIfAbsent(attribute.getKey(), attribute.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    // per-entry digests belong to the dropped signatures
+    private static Attributes withoutDigests(Attributes attributes) {
+        Attributes copy = new Attributes();
+        for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            if (!attribute.getKey().toString().toUpperCase(Locale.ROOT).endsWith("-DIGEST")) {
+                copy.put(attribute.getKey(), attribute.getValue());
+            }
+        }
+        return copy;
+    }
+
+    private static Set<String> packages(JarFile jarFile) {
+        Set<String> packages = new LinkedHashSet<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            int slash = name.lastIndexOf('/');
+            if (slash > 0 && name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                packages.add(name.substring(0, slash + 1));
+            }
+        }
+        return packages;
+    }
+
+    private static void readServices(JarFile jarFile, JarEntry entry, Set<String> providers) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(jarFile.getInputStream(entry), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!provider.isEmpty()) {
+                    providers.add(provider);
+                }
+            }
+        }
+    }
+
+    private static boolean isSignature(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0) {
+            return false;
+        }
+        String upper = name.toUpperCase(Locale.ROOT);
+        return upper.endsWith(".SF") || upper.endsWith(".DSA") || upper.endsWith(".RSA") || upper.endsWith(".EC")
+                || upper.equals("META-INF/INDEX.LIST");
+    }
+}
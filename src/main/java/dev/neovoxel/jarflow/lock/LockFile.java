@@ -0,0 +1,140 @@
+package dev.neovoxel.jarflow.lock;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.util.FileUtil;
+import dev.neovoxel.jarflow.util.RelocationUtil;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records the mediated graph of every root dependency so an unchanged graph can be loaded without resolving.
+ * The file is line based and tab separated:
+ * <pre>
+ * root       &lt;key&gt;
+ * repository &lt;url&gt;
+ * artifact   &lt;groupId&gt; &lt;artifactId&gt; &lt;version&gt; &lt;mediatedVersion&gt; &lt;downloadUrl&gt; &lt;sha1&gt; &lt;relocatedFile&gt;
+ * </pre>
+ */
+public class LockFile {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Lock");
+
+    private static final String NONE = "-";
+
+    @Getter
+    private final File file;
+
+    private final Map<String, LockedRoot> roots = new LinkedHashMap<>();
+
+    private LockFile(File file) {
+        this.file = file;
+    }
+
+    public static String key(Dependency dependency) {
+        return dependency.getLocation() + "|" + RelocationUtil.describe(dependency.getRelocationRules());
+    }
+
+    public static LockFile read(File file) {
+        LockFile lockFile = new LockFile(file);
+        if (!file.isFile()) {
+            return lockFile;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            LockedRoot current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\t", -1);
+                switch (parts[0]) {
+                    case "root":
+                        current = new LockedRoot(parts[1], Collections.emptyList());
+                        lockFile.roots.put(current.getKey(), current);
+                        break;
+                    case "repository":
+                        if (current != null) current.getRepositories().add(parts[1]);
+                        break;
+                    case "artifact":
+                        if (current != null && parts.length == 8) {
+                            current.getArtifacts().add(new LockedArtifact(parts[1], parts[2], parts[3],
+                                    nullable(parts[4]), NONE.equals(parts[5]) ? "" : parts[5], nullable(parts[6]), nullable(parts[7])));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            logger.warn("Ignoring unreadable lockfile {}, caused by: {}", file, e.getMessage());
+            lockFile.roots.clear();
+        }
+        return lockFile;
+    }
+
+    /**
+     * Returns the locked graph for a root if it was recorded against the same repositories.
+     */
+    @Nullable
+    public synchronized LockedRoot find(String key, List<String> repositories) {
+        LockedRoot root = roots.get(key);
+        if (root == null || !root.getRepositories().equals(repositories)) {
+            return null;
+        }
+        return root;
+    }
+
+    public synchronized void put(LockedRoot root) {
+        roots.put(root.getKey(), root);
+    }
+
+    public synchronized boolean remove(String key) {
+        return roots.remove(key) != null;
+    }
+
+    public synchronized void write() throws IOException {
+        Path target = file.toPath();
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("# JarFlow lockfile, generated automatically");
+                writer.newLine();
+                for (LockedRoot root : roots.values()) {
+                    writer.write("root\t" + root.getKey());
+                    writer.newLine();
+                    for (String repository : root.getRepositories()) {
+                        writer.write("repository\t" + repository);
+                        writer.newLine();
+                    }
+                    for (LockedArtifact artifact : root.getArtifacts()) {
+                        writer.write(String.join("\t", "artifact", artifact.getGroupId(), artifact.getArtifactId(),
+                                artifact.getVersion(), orNone(artifact.getMediatedVersion()), orNone(artifact.getDownloadUrl()),
+                                orNone(artifact.getSha1()), orNone(artifact.getRelocatedFile())));
+                        writer.newLine();
+                    }
+                }
+            }
+            FileUtil.moveAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String orNone(@Nullable String value) {
+        return value == null || value.isEmpty() ? NONE : value;
+    }
+
+    @Nullable
+    private static String nullable(String value) {
+        return NONE.equals(value) ? null : value;
+    }
+}
@@ -0,0 +1,46 @@
+package dev.neovoxel.jarflow.lock;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+@Getter
+public class LockedArtifact {
+    @NotNull
+    private final String groupId;
+
+    @NotNull
+    private final String artifactId;
+
+    @NotNull
+    private final String version;
+
+    // version picked by PomParser.filter, null when the node kept its own version
+    @Nullable
+    private final String mediatedVersion;
+
+    @NotNull
+    private final String downloadUrl;
+
+    @Nullable
+    private final String sha1;
+
+    // file name of the relocated jar, null when the artifact is loaded as downloaded
+    @Nullable
+    private final String relocatedFile;
+
+    public LockedArtifact(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @Nullable String mediatedVersion,
+                          @NotNull String downloadUrl, @Nullable String sha1, @Nullable String relocatedFile) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.mediatedVersion = mediatedVersion;
+        this.downloadUrl = downloadUrl;
+        this.sha1 = sha1;
+        this.relocatedFile = relocatedFile;
+    }
+
+    public String getLocation() {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+}
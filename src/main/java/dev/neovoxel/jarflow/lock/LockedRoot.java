@@ -0,0 +1,20 @@
+package dev.neovoxel.jarflow.lock;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+public class LockedRoot {
+    private final String key;
+
+    private final List<String> repositories = new ArrayList<>();
+
+    private final List<LockedArtifact> artifacts = new ArrayList<>();
+
+    public LockedRoot(String key, List<String> repositories) {
+        this.key = key;
+        this.repositories.addAll(repositories);
+    }
+}
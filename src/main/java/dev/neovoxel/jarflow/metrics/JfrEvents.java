@@ -0,0 +1,94 @@
+package dev.neovoxel.jarflow.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Emits a {@code dev.neovoxel.jarflow.Phase} Flight Recorder event per timed phase. The event type is created
+ * through {@code jdk.jfr.EventFactory} by reflection, so nothing happens on runtimes without JFR.
+ */
+class JfrEvents {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Metrics");
+
+    private static Object factory;
+    private static Method newEvent;
+    private static Method isEnabled;
+    private static Method begin;
+    private static Method end;
+    private static Method set;
+    private static Method commit;
+
+    static {
+        try {
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class);
+            Object categories = Array.newInstance(String.class, 1);
+            Array.set(categories, 0, "JarFlow");
+            List<Object> annotations = Arrays.asList(
+                    annotation.newInstance(Class.forName("jdk.jfr.Name"), "dev.neovoxel.jarflow.Phase"),
+                    annotation.newInstance(Class.forName("jdk.jfr.Label"), "JarFlow Phase"),
+                    annotation.newInstance(Class.forName("jdk.jfr.Category"), categories));
+            List<Object> fields = new ArrayList<>();
+            fields.add(field.newInstance(String.class, "phase"));
+            fields.add(field.newInstance(String.class, "artifact"));
+            fields.add(field.newInstance(long.class, "bytes"));
+            factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            newEvent = factoryClass.getMethod("newEvent");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+        } catch (ClassNotFoundException e) {
+            // no Flight Recorder on this runtime
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Flight Recorder events are unavailable, caused by: {}", e.toString());
+            factory = null;
+        }
+    }
+
+    // null when JFR is missing or not recording this event
+    static Object begin(Phase phase, String artifact) {
+        if (factory == null) {
+            return null;
+        }
+        try {
+            Object event = newEvent.invoke(factory);
+            if (!(Boolean) isEnabled.invoke(event)) {
+                return null;
+            }
+            set.invoke(event, 0, phase.name());
+            set.invoke(event, 1, artifact);
+            begin.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException e) {
+            factory = null;
+            return null;
+        }
+    }
+
+    static void commit(Object event, long bytes) {
+        if (event == null) {
+            return;
+        }
+        try {
+            end.invoke(event);
+            set.invoke(event, 2, bytes);
+            commit.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            factory = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package dev.neovoxel.jarflow.metrics;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-phase timings, transferred bytes and cache hit rates of everything JarFlow does, aggregated in process and
+ * forwarded to registered {@link MetricsListener}s and, when available, to JDK Flight Recorder.
+ */
+public class Metrics {
+
+    private static final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private static final Map<Phase, LongAdder> phaseCounts = new EnumMap<>(Phase.class);
+
+    private static final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+    private static final LongAdder transferred = new LongAdder();
+
+    private static final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+
+    private static final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+
+    static {
+        for (Phase phase : Phase.values()) {
+            phaseCounts.put(phase, new LongAdder());
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    public static void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts timing {@code phase} of {@code artifact}; the returned timer must be stopped exactly once.
+     */
+    public static Timer start(Phase phase, String artifact) {
+        return new Timer(phase, artifact, JfrEvents.begin(phase, artifact));
+    }
+
+    public static void transferred(long bytes) {
+        transferred.add(bytes);
+        for (MetricsListener listener : listeners) {
+            listener.onTransferred(bytes);
+        }
+    }
+
+    public static void cacheAccess(String cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses).computeIfAbsent(cache, key -> new LongAdder()).increment();
+        for (MetricsListener listener : listeners) {
+            listener.onCacheAccess(cache, hit);
+        }
+    }
+
+    public static long getCount(Phase phase) {
+        return phaseCounts.get(phase).sum();
+    }
+
+    public static long getTotalNanos(Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    public static long getBytesTransferred() {
+        return transferred.sum();
+    }
+
+    /**
+     * Returns the fraction of hits in {@code cache}, or -1 if it was never accessed.
+     */
+    public static double getHitRate(String cache) {
+        long hits = sum(cacheHits.get(cache));
+        long total = hits + sum(cacheMisses.get(cache));
+        return total == 0 ? -1 : (double) hits / total;
+    }
+
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            phaseCounts.get(phase).reset();
+            phaseNanos.get(phase).reset();
+        }
+        transferred.reset();
+        cacheHits.clear();
+        cacheMisses.clear();
+    }
+
+    /**
+     * One line per phase plus transfer and cache totals, for logging at the end of a startup.
+     */
+    public static String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            builder.append(phase).append(": ").append(getCount(phase)).append(" in ")
+                    .append(getTotalNanos(phase) / 1_000_000).append("ms\n");
+        }
+        builder.append("Transferred: ").append(getBytesTransferred()).append(" bytes\n");
+        // a cache that only missed, like every cache on a cold start, is reported too
+        Set<String> caches = new TreeSet<>(cacheHits.keySet());
+        caches.addAll(cacheMisses.keySet());
+        for (String cache : caches) {
+            builder.append("Cache ").append(cache).append(": ")
+                    .append(String.format("%.1f%%", getHitRate(cache) * 100)).append(" hits\n");
+        }
+        return builder.toString();
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public static class Timer {
+        private final Phase phase;
+        private final String artifact;
+        private final Object event;
+        private final long start = System.nanoTime();
+
+        private Timer(Phase phase, String artifact, Object event) {
+            this.phase = phase;
+            this.artifact = artifact;
+            this.event = event;
+        }
+
+        public void stop() {
+            stop(0);
+        }
+
+        public void stop(long bytes) {
+            long duration = System.nanoTime() - start;
+            phaseCounts.get(phase).increment();
+            phaseNanos.get(phase).add(duration);
+            JfrEvents.commit(event, bytes);
+            for (MetricsListener listener : listeners) {
+                listener.onPhase(phase, artifact, start, duration, bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package dev.neovoxel.jarflow.metrics;
+
+/**
+ * Receives raw measurements as they happen, possibly from several threads at once.
+ */
+public interface MetricsListener {
+
+    /**
+     * {@code phase} of {@code artifact} took {@code durationNanos}; {@code bytes} is only set for downloads.
+     */
+    default void onPhase(Phase phase, String artifact, long startNanos, long durationNanos, long bytes) {
+    }
+
+    /**
+     * {@code bytes} more bytes were received from a repository.
+     */
+    default void onTransferred(long bytes) {
+    }
+
+    /**
+     * A lookup in {@code cache} (for example {@code "pom"} or {@code "model"}) was a hit or a miss.
+     */
+    default void onCacheAccess(String cache, boolean hit) {
+    }
+}
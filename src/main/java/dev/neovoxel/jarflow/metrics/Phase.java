@@ -0,0 +1,10 @@
+package dev.neovoxel.jarflow.metrics;
+
+public enum Phase {
+    POM_FETCH,
+    MODEL_BUILD,
+    MEDIATION,
+    DOWNLOAD,
+    RELOCATION,
+    LOAD
+}
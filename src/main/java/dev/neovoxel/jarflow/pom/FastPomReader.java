@@ -0,0 +1,229 @@
+package dev.neovoxel.jarflow.pom;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Repository;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Reads the parts of a self-contained pom that resolution needs (coordinates, packaging, dependencies with their
+ * exclusions, repositories) in one StAX pass. Returns null whenever the effective model could differ from the raw
+ * pom, that is when the pom has a parent, profiles, dependency management or any {@code ${...}} expression, so
+ * the caller can fall back to the full model builder.
+ */
+class FastPomReader {
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    static Model read(String content) {
+        if (content.contains("${")) {
+            return null;
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(new StringReader(content));
+            Model model = new Model();
+            model.setPackaging("jar");
+            while (reader.hasNext() && reader.next() != XMLStreamReader.START_ELEMENT) {
+                // skip to <project>
+            }
+            if (!reader.isStartElement() || !reader.getLocalName().equals("project")) {
+                return null;
+            }
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "parent":
+                    case "profiles":
+                    case "dependencyManagement":
+                        return null;
+                    case "modelVersion":
+                        model.setModelVersion(reader.getElementText().trim());
+                        break;
+                    case "groupId":
+                        model.setGroupId(reader.getElementText().trim());
+                        break;
+                    case "artifactId":
+                        model.setArtifactId(reader.getElementText().trim());
+                        break;
+                    case "version":
+                        model.setVersion(reader.getElementText().trim());
+                        break;
+                    case "packaging":
+                        model.setPackaging(reader.getElementText().trim());
+                        break;
+                    case "dependencies":
+                        while (nextChild(reader)) {
+                            if (!reader.getLocalName().equals("dependency")) {
+                                skip(reader);
+                                continue;
+                            }
+                            Dependency dependency = readDependency(reader);
+                            // a missing version would have to come from dependency management
+                            if (dependency == null) {
+                                return null;
+                            }
+                            model.addDependency(dependency);
+                        }
+                        break;
+                    case "repositories":
+                        while (nextChild(reader)) {
+                            if (reader.getLocalName().equals("repository")) {
+                                Repository repository = readRepository(reader);
+                                if (repository.getUrl() != null) {
+                                    model.addRepository(repository);
+                                }
+                            } else {
+                                skip(reader);
+                            }
+                        }
+                        break;
+                    default:
+                        skip(reader);
+                }
+            }
+            if (model.getGroupId() == null || model.getArtifactId() == null || model.getVersion() == null) {
+                return null;
+            }
+            // the super pom contributes central to every effective model
+            Repository central = new Repository();
+            central.setId("central");
+            central.setName("Central Repository");
+            central.setUrl("https://repo.maven.apache.org/maven2");
+            model.addRepository(central);
+            return model;
+        } catch (XMLStreamException | RuntimeException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    private static Dependency readDependency(XMLStreamReader reader) throws XMLStreamException {
+        Dependency dependency = new Dependency();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "groupId":
+                    dependency.setGroupId(reader.getElementText().trim());
+                    break;
+                case "artifactId":
+                    dependency.setArtifactId(reader.getElementText().trim());
+                    break;
+                case "version":
+                    dependency.setVersion(reader.getElementText().trim());
+                    break;
+                case "type":
+                    dependency.setType(reader.getElementText().trim());
+                    break;
+                case "classifier":
+                    dependency.setClassifier(reader.getElementText().trim());
+                    break;
+                case "scope":
+                    dependency.setScope(reader.getElementText().trim());
+                    break;
+                case "optional":
+                    dependency.setOptional(reader.getElementText().trim());
+                    break;
+                case "exclusions":
+                    while (nextChild(reader)) {
+                        if (reader.getLocalName().equals("exclusion")) {
+                            dependency.addExclusion(readExclusion(reader));
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        if (dependency.getGroupId() == null || dependency.getArtifactId() == null || dependency.getVersion() == null) {
+            return null;
+        }
+        if (dependency.getScope() == null) {
+            dependency.setScope("compile");
+        }
+        return dependency;
+    }
+
+    private static Exclusion readExclusion(XMLStreamReader reader) throws XMLStreamException {
+        Exclusion exclusion = new Exclusion();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "groupId":
+                    exclusion.setGroupId(reader.getElementText().trim());
+                    break;
+                case "artifactId":
+                    exclusion.setArtifactId(reader.getElementText().trim());
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        return exclusion;
+    }
+
+    private static Repository readRepository(XMLStreamReader reader) throws XMLStreamException {
+        Repository repository = new Repository();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "id":
+                    repository.setId(reader.getElementText().trim());
+                    break;
+                case "name":
+                    repository.setName(reader.getElementText().trim());
+                    break;
+                case "url":
+                    repository.setUrl(reader.getElementText().trim());
+                    break;
+                case "layout":
+                    repository.setLayout(reader.getElementText().trim());
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        return repository;
+    }
+
+    // moves to the next child element of the current element, false once its end tag is reached
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamReader.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -1,38 +1,108 @@
 package dev.neovoxel.jarflow.pom;
 
+import dev.neovoxel.jarflow.dependency.Coordinate;
 import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.metrics.Metrics;
+import dev.neovoxel.jarflow.metrics.Phase;
 import dev.neovoxel.jarflow.remote.HttpModelResolver;
+import dev.neovoxel.jarflow.remote.MetadataResolver;
+import dev.neovoxel.jarflow.remote.PomCache;
 import dev.neovoxel.jarflow.repository.Repository;
+import dev.neovoxel.jarflow.repository.RepositoryRouter;
 import dev.neovoxel.jarflow.util.DependencyNode;
-import dev.neovoxel.jarflow.remote.HttpUtil;
+import dev.neovoxel.jarflow.util.SnapshotBuilds;
+import lombok.Getter;
+import lombok.Setter;
 import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.*;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class PomParser {
     private static final Logger logger = LoggerFactory.getLogger("JarFlow Parser");
 
-    private static Model getModel(String content, String repoUrl) {
+    @Getter
+    private static int parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService executor;
+
+    // chains that are still running when setParallelism retires a pool move their next step to the current one
+    private static final Executor dispatcher = task -> {
+        while (true) {
+            ExecutorService current = getExecutor();
+            try {
+                current.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                if (current == getExecutor()) {
+                    throw e;
+                }
+            }
+        }
+    };
+
+    private static final ModelBuilder modelBuilder = new DefaultModelBuilderFactory().newInstance();
+
+    @Getter
+    private static final SharedModelCache modelCache = new SharedModelCache();
+
+    private static final Map<String, ResolvedPom> resolvedPoms = new ConcurrentHashMap<>();
+
+    // self-contained poms skip the model builder, see FastPomReader
+    @Setter
+    @Getter
+    private static boolean fastPathEnabled = true;
+
+    private static final AtomicLong fastPathModels = new AtomicLong();
+
+    private static final AtomicLong fullBuildModels = new AtomicLong();
+
+    static Model getModel(String content, String repoUrl, String artifact) {
+        Metrics.Timer timer = Metrics.start(Phase.MODEL_BUILD, artifact);
         try {
-            ModelBuilder builder = new DefaultModelBuilderFactory().newInstance();
+            if (fastPathEnabled) {
+                Model model = FastPomReader.read(content);
+                if (model != null) {
+                    fastPathModels.incrementAndGet();
+                    return model;
+                }
+            }
+            fullBuildModels.incrementAndGet();
             ModelBuildingRequest request = new DefaultModelBuildingRequest();
+            request.setModelCache(modelCache);
             request.setProcessPlugins(false);
             request.setModelSource(new StringModelSource(content));
             request.setModelResolver(new HttpModelResolver(repoUrl));
             request.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
             request.setSystemProperties(System.getProperties());
-            return builder.build(request).getEffectiveModel();
+            return modelBuilder.build(request).getEffectiveModel();
         } catch (ModelBuildingException e) {
             e.printStackTrace();
+        } finally {
+            timer.stop();
         }
         return null;
     }
 
+    public static long getFastPathModels() {
+        return fastPathModels.get();
+    }
+
+    public static long getFullBuildModels() {
+        return fullBuildModels.get();
+    }
+
     public static String getLatestVersion(Collection<String> versions) {
         if (versions == null || versions.isEmpty()) return null;
 
@@ -45,31 +115,70 @@ public class PomParser {
 
     // will not get children nodes
     public static List<DependencyNode> filter(List<DependencyNode> nodes) {
-        Map<String, List<DependencyNode>> repeated = new HashMap<>();
-        List<String> repeatedStr = new ArrayList<>();
+        Metrics.Timer timer = Metrics.start(Phase.MEDIATION, nodes.isEmpty() ? "" : nodes.get(0).getDependency().getLocation());
+        Map<Coordinate, List<DependencyNode>> repeated = new HashMap<>();
+        Set<Coordinate> repeatedKeys = new LinkedHashSet<>();
         for (DependencyNode node : nodes) {
-            String key = node.getDependency().getGroupId() + ":" + node.getDependency().getArtifactId();
-            if (repeated.containsKey(key)) {
-                repeatedStr.add(key);
-                repeated.get(key).add(node);
+            Coordinate key = node.getDependency().getCoordinate().withoutVersion();
+            List<DependencyNode> list = repeated.get(key);
+            if (list != null) {
+                repeatedKeys.add(key);
+                list.add(node);
             } else {
-                List<DependencyNode> list = new ArrayList<>();
+                list = new ArrayList<>();
                 list.add(node);
                 repeated.put(key, list);
             }
         }
-        for (String key : repeatedStr) {
-            List<String> versions = repeated.get(key).stream().map(node -> node.getDependency().getVersion()).distinct().collect(Collectors.toList());
-            String latest = getLatestVersion(versions);
+        for (Coordinate key : repeatedKeys) {
+            // nodes whose range matched nothing still carry the range instead of a version
+            List<String> versions = repeated.get(key).stream().map(node -> node.getDependency().getVersion())
+                    .filter(version -> !MetadataResolver.isDynamic(version)).distinct().collect(Collectors.toList());
+            String latest = mediate(key, repeated.get(key), versions);
+            if (latest == null) continue;
             for (DependencyNode node : repeated.get(key)) {
                 if (!node.getDependency().getVersion().equals(latest)) {
                     node.setNewVersion(latest);
                 }
             }
         }
+        timer.stop();
         return nodes;
     }
 
+    // ranges are hard requirements and plain versions only preferences, so the highest version inside every range wins
+    @Nullable
+    private static String mediate(Coordinate key, List<DependencyNode> nodes, List<String> versions) {
+        VersionRange range = null;
+        List<String> specs = new ArrayList<>();
+        for (DependencyNode node : nodes) {
+            String spec = node.getRequestedVersion();
+            if (spec == null || !(spec.startsWith("[") || spec.startsWith("("))) continue;
+            try {
+                VersionRange next = VersionRange.createFromVersionSpec(spec);
+                range = range == null ? next : range.restrict(next);
+                specs.add(spec);
+            } catch (InvalidVersionSpecificationException e) {
+                // already reported when the node was resolved
+            }
+        }
+        if (range == null) {
+            return getLatestVersion(versions);
+        }
+        DefaultArtifactVersion best = null;
+        for (String version : versions) {
+            DefaultArtifactVersion candidate = new DefaultArtifactVersion(version);
+            if (range.containsVersion(candidate) && (best == null || candidate.compareTo(best) > 0)) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            logger.error("No version of {} in {} satisfies all of {}, using the highest one", key, versions, specs);
+            return getLatestVersion(versions);
+        }
+        return best.toString();
+    }
+
     public static List<DependencyNode> getAllNodes(Collection<DependencyNode> nodes) {
         List<DependencyNode> result = new ArrayList<>();
         collect(nodes, result);
@@ -86,41 +195,110 @@ public class PomParser {
     }
 
     public static DependencyNode resolve(Dependency dependency, Collection<Repository> repositories) {
-        return resolve(new DependencyNode(dependency, ""), repositories);
+        return resolve(dependency, repositories, node -> {});
     }
-    
-    private static DependencyNode resolve(DependencyNode node, Collection<Repository> repositories) {
-        for (Repository repository : repositories) {
-            String pomUrl = repository.getUrl() +
-                    node.getDependency().getUrlLocation() +
-                    node.getDependency().getPomFile();
-            String content = HttpUtil.get(pomUrl);
-            if (content == null) {
-                continue;
+
+    /**
+     * Resolves the graph like {@link #resolve(Dependency, Collection)}, calling {@code listener} from a resolver
+     * thread as soon as each node's pom has been read and its download url is known.
+     */
+    public static DependencyNode resolve(Dependency dependency, Collection<Repository> repositories, Consumer<DependencyNode> listener) {
+        DependencyNode node = new DependencyNode(dependency, "");
+        Map<String, SharedFetch> inFlight = new ConcurrentHashMap<>();
+        try {
+            resolve(node, repositories, inFlight, listener).join();
+        } catch (CompletionException e) {
+            // a listener cancelled the load, which is not a resolution failure
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
             }
-            Model model = getModel(content, repository.getUrl());
-            if (model == null) {
-                logger.warn("Failed to resolve dependency {} (failed to parse pom file)", node.getDependency().getLocation());
-                continue;
+            logger.error("Failed to resolve dependency {}", dependency.getLocation(), e.getCause());
+        }
+        return node;
+    }
+
+    public static void clearModelCache() {
+        resolvedPoms.clear();
+        modelCache.clear();
+    }
+
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        PomParser.parallelism = parallelism;
+        ExecutorService previous = executor;
+        executor = null;
+        if (previous != null) {
+            // queued fetches still run on the old pool, anything submitted later goes to the new one
+            previous.shutdown();
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "JarFlow Resolver #" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    // ranges, LATEST and RELEASE are pinned to a concrete version before the pom is fetched
+    private static CompletableFuture<DependencyNode> resolve(DependencyNode node, Collection<Repository> repositories,
+                                                             Map<String, SharedFetch> inFlight,
+                                                             Consumer<DependencyNode> listener) {
+        Dependency requested = node.getDependency();
+        if (!MetadataResolver.isDynamic(requested.getVersion())) {
+            return resolveConcrete(node, repositories, inFlight, listener);
+        }
+        node.setRequestedVersion(requested.getVersion());
+        return CompletableFuture.supplyAsync(() -> MetadataResolver.resolveVersion(requested, repositories), dispatcher)
+                .thenCompose(version -> {
+                    if (version == null) {
+                        logger.error("No version of {}:{} matches {}", requested.getGroupId(), requested.getArtifactId(), requested.getVersion());
+                        return CompletableFuture.completedFuture(node);
+                    }
+                    node.setDependency(requested.withVersion(version));
+                    return resolveConcrete(node, repositories, inFlight, listener);
+                });
+    }
+
+    // pom fetches are shared by GAV, but every node still gets its own children
+    private static CompletableFuture<DependencyNode> resolveConcrete(DependencyNode node, Collection<Repository> repositories,
+                                                                     Map<String, SharedFetch> inFlight,
+                                                                     Consumer<DependencyNode> listener) {
+        Dependency dependency = node.getDependency();
+        return fetchShared(dependency, dependency.getLocation(), repositories, inFlight).thenCompose(pom -> {
+            if (pom == null) {
+                return CompletableFuture.completedFuture(node);
             }
+            Model model = pom.getModel();
+            String repoUrl = pom.getRepository().getUrl();
             if (!model.getPackaging().equalsIgnoreCase("pom")) {
-                node.setDownloadUrl(repository.getUrl() +
-                        node.getDependency().getUrlLocation() +
-                        node.getDependency().getArtifactId() + "-" + node.getDependency().getVersion() + ".jar");
+                node.setDownloadUrl(repoUrl +
+                        dependency.getUrlLocation() +
+                        dependency.getArtifactId() + "-" + pom.getFileVersion() + ".jar");
             }
-            node.getDependency().getRepositories().addAll(model.getRepositories().stream()
+            dependency.getRepositories().addAll(model.getRepositories().stream()
                     .map(Repository::from).collect(Collectors.toList()));
-            List<Dependency> subDeps = new ArrayList<>();
-            subDeps.addAll(Dependency.from(model));
-            List<DependencyNode> subDepNodes = subDeps.stream().map(d -> {
-                DependencyNode child = new DependencyNode(d, "");
+            listener.accept(node);
+            List<DependencyNode> subDepNodes = new ArrayList<>();
+            for (Dependency subDep : Dependency.from(model)) {
+                if (isCyclic(node, subDep)) {
+                    continue;
+                }
+                DependencyNode child = new DependencyNode(subDep, "");
                 node.getChildren().add(child);
                 child.setParent(node);
-                return child;
-            }).collect(Collectors.toList());
+                subDepNodes.add(child);
+            }
             List<Repository> repositories1 = new ArrayList<>();
             repositories1.addAll(repositories);
-            repositories1.addAll(node.getDependency().getRepositories());
+            repositories1.addAll(dependency.getRepositories());
             List<String> repositoryStrings = new ArrayList<>();
             List<Repository> repositories2 = new ArrayList<>();
             for (Repository repository1 : repositories1) {
@@ -129,10 +307,167 @@ public class PomParser {
                     repositories2.add(repository1);
                 }
             }
-            subDepNodes.forEach(node1 -> resolve(node1, repositories2));
-            return node;
+            CompletableFuture<?>[] children = subDepNodes.stream()
+                    .map(child -> resolve(child, repositories2, inFlight, listener))
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(children).thenApply(v -> node);
+        });
+    }
+
+    // a miss through one set of repositories says nothing about a node that brings extra ones, so only those are tried again
+    private static CompletableFuture<ResolvedPom> fetchShared(Dependency dependency, String key, Collection<Repository> repositories,
+                                                              Map<String, SharedFetch> inFlight) {
+        SharedFetch shared = inFlight.computeIfAbsent(key, k -> new SharedFetch(repositories,
+                CompletableFuture.supplyAsync(() -> fetch(dependency, repositories), dispatcher)));
+        return shared.future.thenCompose(pom -> {
+            if (pom != null) {
+                return CompletableFuture.completedFuture(pom);
+            }
+            List<Repository> untried = repositories.stream()
+                    .filter(repository -> !shared.repositoryUrls.contains(repository.getUrl()))
+                    .collect(Collectors.toList());
+            if (untried.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            String retryKey = untried.stream().map(Repository::getUrl).sorted()
+                    .collect(Collectors.joining(",", dependency.getLocation() + "@", ""));
+            return fetchShared(dependency, retryKey, untried, inFlight);
+        });
+    }
+
+    private static boolean isCyclic(DependencyNode node, Dependency dependency) {
+        for (DependencyNode current = node; current != null; current = current.getParent()) {
+            Dependency ancestor = current.getDependency();
+            if (ancestor.getGroupId().equals(dependency.getGroupId()) &&
+                    ancestor.getArtifactId().equals(dependency.getArtifactId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResolvedPom fetch(Dependency dependency, Collection<Repository> repositories) {
+        ResolvedPom resolved = resolvedPoms.get(dependency.getLocation());
+        // like the disk cache, a pom found in a repository the caller did not ask for is a miss
+        if (resolved != null && findRepository(repositories, resolved.getRepository().getUrl()) != null) {
+            return resolved;
+        }
+        if (MetadataResolver.isSnapshot(dependency.getVersion())) {
+            // snapshots can change, so only their timestamped builds are cached, on disk
+            return fetchSnapshotModel(dependency, repositories);
+        }
+        resolved = fetchModel(dependency, repositories);
+        if (resolved != null) {
+            resolvedPoms.put(dependency.getLocation(), resolved);
+        }
+        return resolved;
+    }
+
+    private static ResolvedPom fetchModel(Dependency dependency, Collection<Repository> repositories) {
+        String path = dependency.getUrlLocation() + dependency.getPomFile();
+        // the cache lookup and the request after a miss are one fetch, model building is timed on its own
+        Metrics.Timer timer = Metrics.start(Phase.POM_FETCH, dependency.getLocation());
+        PomCache.Entry cached = PomCache.lookup(path);
+        // a pom cached from a repository the caller did not ask for is treated as a miss
+        Repository cachedRepository = cached == null ? null : findRepository(repositories, cached.getRepositoryUrl());
+        if (cachedRepository != null) {
+            timer.stop();
+            Model model = getModel(cached.getContent(), cachedRepository.getUrl(), dependency.getLocation());
+            if (model != null) {
+                return new ResolvedPom(cachedRepository, model, dependency.getVersion());
+            }
+            timer = Metrics.start(Phase.POM_FETCH, dependency.getLocation());
+        }
+        List<Repository> remaining = new ArrayList<>(repositories);
+        RepositoryRouter.Routed routed;
+        while (true) {
+            routed = RepositoryRouter.fetch(remaining, dependency, path);
+            timer.stop();
+            if (routed == null) {
+                break;
+            }
+            Repository repository = routed.getRepository();
+            PomCache.store(path, repository.getUrl(), routed.getContent());
+            Model model = getModel(routed.getContent(), repository.getUrl(), dependency.getLocation());
+            if (model == null) {
+                logger.warn("Failed to resolve dependency {} (failed to parse pom file)", dependency.getLocation());
+                remaining.remove(repository);
+                timer = Metrics.start(Phase.POM_FETCH, dependency.getLocation());
+                continue;
+            }
+            return new ResolvedPom(repository, model, dependency.getVersion());
+        }
+        logger.error("Failed to resolve dependency {}", dependency.getLocation());
+        return null;
+    }
+
+    private static ResolvedPom fetchSnapshotModel(Dependency dependency, Collection<Repository> repositories) {
+        for (Repository repository : RepositoryRouter.order(repositories, dependency)) {
+            String pomVersion = MetadataResolver.resolveSnapshot(repository.getUrl(), dependency, "pom");
+            if (pomVersion == null) {
+                continue;
+            }
+            String path = dependency.getUrlLocation() + dependency.getArtifactId() + "-" + pomVersion + ".pom";
+            Metrics.Timer timer = Metrics.start(Phase.POM_FETCH, dependency.getLocation());
+            String content = PomCache.get(repository.getUrl(), path);
+            timer.stop();
+            if (content == null) {
+                continue;
+            }
+            Model model = getModel(content, repository.getUrl(), dependency.getLocation());
+            if (model != null) {
+                String jarVersion = MetadataResolver.resolveSnapshot(repository.getUrl(), dependency, "jar");
+                return new ResolvedPom(repository, model, jarVersion != null ? jarVersion : pomVersion);
+            }
+        }
+        // offline or unreachable: keep using the build whose jar is already on disk, if its pom was cached with it
+        String recorded = SnapshotBuilds.read(PomCache.getDirectory(), dependency);
+        if (recorded != null) {
+            PomCache.Entry cached = PomCache.lookup(dependency.getUrlLocation() + dependency.getArtifactId() + "-" + recorded + ".pom");
+            Repository repository = cached == null ? null : findRepository(repositories, cached.getRepositoryUrl());
+            Model model = repository == null ? null : getModel(cached.getContent(), repository.getUrl(), dependency.getLocation());
+            if (model != null) {
+                logger.info("No metadata for {}, using the downloaded build {}", dependency.getLocation(), recorded);
+                return new ResolvedPom(repository, model, recorded);
+            }
+        }
+        logger.error("Failed to resolve snapshot {}", dependency.getLocation());
+        return null;
+    }
+
+    @Nullable
+    private static Repository findRepository(Collection<Repository> repositories, String url) {
+        for (Repository repository : repositories) {
+            if (repository.getUrl().equals(url)) {
+                return repository;
+            }
+        }
+        return null;
+    }
+
+    private static class SharedFetch {
+        private final Set<String> repositoryUrls = new HashSet<>();
+        private final CompletableFuture<ResolvedPom> future;
+
+        private SharedFetch(Collection<Repository> repositories, CompletableFuture<ResolvedPom> future) {
+            for (Repository repository : repositories) {
+                repositoryUrls.add(repository.getUrl());
+            }
+            this.future = future;
+        }
+    }
+
+    @Getter
+    private static class ResolvedPom {
+        private final Repository repository;
+        private final Model model;
+        // version used in remote file names, differs from the dependency version only for timestamped snapshots
+        private final String fileVersion;
+
+        private ResolvedPom(Repository repository, Model model, String fileVersion) {
+            this.repository = repository;
+            this.model = model;
+            this.fileVersion = fileVersion;
         }
-        logger.error("Failed to resolve dependency {}", node.getDependency().getLocation());
-        return node;
     }
 }
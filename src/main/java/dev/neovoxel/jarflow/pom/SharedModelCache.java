@@ -0,0 +1,39 @@
+package dev.neovoxel.jarflow.pom;
+
+import dev.neovoxel.jarflow.metrics.Metrics;
+import org.apache.maven.model.building.ModelCache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache for raw parent poms and imported boms, so each of them is read and interpreted once.
+ */
+public class SharedModelCache implements ModelCache {
+
+    private final Map<String, Object> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String groupId, String artifactId, String version, String tag, Object data) {
+        entries.put(key(groupId, artifactId, version, tag), data);
+    }
+
+    @Override
+    public Object get(String groupId, String artifactId, String version, String tag) {
+        Object value = entries.get(key(groupId, artifactId, version, tag));
+        Metrics.cacheAccess("model", value != null);
+        return value;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static String key(String groupId, String artifactId, String version, String tag) {
+        return groupId + ":" + artifactId + ":" + version + ":" + tag;
+    }
+}
@@ -0,0 +1,120 @@
+package dev.neovoxel.jarflow.remote;
+
+import dev.neovoxel.jarflow.util.HashUtil;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Checks downloaded artifacts against the {@code .sha1} / {@code .sha256} files published next to them.
+ */
+public class ChecksumVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Integrity");
+
+    /**
+     * Verifies the hashes of the artifact at {@code url}. Artifacts without published checksums are accepted,
+     * so the result tells whether a checksum was actually compared.
+     */
+    public static boolean verify(String url, String sha1, String sha256) throws IOException {
+        FetchResult published = HttpUtil.fetch(url + ".sha1");
+        String expected = parseChecksum(published);
+        if (expected != null) {
+            check(url, "SHA-1", expected, sha1);
+            return true;
+        }
+        boolean reachable = published.getStatus() != -1;
+        published = HttpUtil.fetch(url + ".sha256");
+        expected = parseChecksum(published);
+        if (expected != null) {
+            check(url, "SHA-256", expected, sha256);
+            return true;
+        }
+        if (reachable && published.getStatus() != -1) {
+            logger.warn("No checksum published for {}, skipping verification", url);
+        } else {
+            logger.warn("Could not fetch the checksum of {}, it stays unverified", url);
+        }
+        return false;
+    }
+
+    public static boolean verify(String url, File file) throws IOException {
+        Digest digest = new Digest();
+        digest.update(file);
+        return verify(url, digest.sha1(), digest.sha256());
+    }
+
+    private static void check(String url, String algorithm, String expected, String actual) throws IOException {
+        if (!expected.equalsIgnoreCase(actual)) {
+            throw new ChecksumException(algorithm + " mismatch for " + url + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    // checksum files may contain "<hash>  <file name>"
+    @Nullable
+    private static String parseChecksum(FetchResult result) {
+        String content = result.getContent();
+        if (content == null) {
+            return null;
+        }
+        String trimmed = content.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        return trimmed.split("\\s+")[0];
+    }
+
+    public static class ChecksumException extends IOException {
+        public ChecksumException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * SHA-1 and SHA-256 computed together while bytes stream through.
+     */
+    public static class Digest {
+        private final MessageDigest sha1 = HashUtil.newDigest("SHA-1");
+        private final MessageDigest sha256 = HashUtil.newDigest("SHA-256");
+        @Getter
+        private long length;
+
+        public synchronized void update(ByteBuffer buffer) {
+            ByteBuffer copy = buffer.duplicate();
+            length += copy.remaining();
+            sha1.update(copy);
+            copy = buffer.duplicate();
+            sha256.update(copy);
+        }
+
+        public void update(File file) throws IOException {
+            try (java.io.InputStream in = new java.io.FileInputStream(file)) {
+                byte[] buffer = new byte[65536];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    update(ByteBuffer.wrap(buffer, 0, bytesRead));
+                }
+            }
+        }
+
+        public synchronized void reset() {
+            sha1.reset();
+            sha256.reset();
+            length = 0;
+        }
+
+        public synchronized String sha1() {
+            return HashUtil.toHex(sha1.digest());
+        }
+
+        public synchronized String sha256() {
+            return HashUtil.toHex(sha256.digest());
+        }
+    }
+}
@@ -1,153 +1,432 @@
 package dev.neovoxel.jarflow.remote;
 
 import dev.neovoxel.jarflow.dependency.Dependency;
-import dev.neovoxel.jarflow.repository.Repository;
+import dev.neovoxel.jarflow.metrics.Metrics;
+import dev.neovoxel.jarflow.util.FileUtil;
+import dev.neovoxel.jarflow.util.IntegrityIndex;
 import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DependencyDownloader {
 
     private static final Logger logger = LoggerFactory.getLogger("JarFlow Downloader");
 
+    // 小于一个分块的文件只需要一次 GET
+    @Setter
+    @Getter
+    private static int chunkSize = 1024 * 1024;
+
+    // 所有下载共享的调度器，限制全局和单个主机的并发数
+    @Setter
+    @Getter
+    private static DownloadScheduler scheduler = new DownloadScheduler(16, KeepAliveTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+
+    @Setter
+    @Getter
+    private static int maxRetries = 4;
+
+    // 第 n 次重试等待 retryBaseDelay * 2^n 毫秒左右，最多 maxRetryDelay
+    @Setter
+    @Getter
+    private static long retryBaseDelay = 500;
+
+    @Setter
+    @Getter
+    private static long maxRetryDelay = 10_000;
+
+    // 重试在这里等待，不占用下载线程
+    private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "JarFlow Retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static void download(String url, Dependency dependency, File libDirPath, int threadNum) throws IOException, InterruptedException {
+        try {
+            downloadAsync(url, dependency, libDirPath, threadNum).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to download " + url, e.getCause());
+        }
+    }
+
+    /**
+     * 在共享的调度器上下载，不占用调用线程
+     */
+    public static CompletableFuture<Void> downloadAsync(String url, Dependency dependency, File libDirPath, int threadNum) {
+        return downloadAsync(url, dependency, libDirPath, threadNum, DownloadListener.NONE);
+    }
+
+    public static CompletableFuture<Void> downloadAsync(String url, Dependency dependency, File libDirPath, int threadNum,
+                                                        DownloadListener listener) {
         libDirPath.mkdirs();
         Path path = libDirPath.toPath()
                 .resolve(dependency.getGroupId())
                 .resolve(dependency.getArtifactId())
                 .resolve(dependency.getVersion());
         path.toFile().mkdirs();
-        downloadWithMultipleThreads(url, path.resolve(dependency.getArtifactId() + "-" + dependency.getVersion() + ".jar").toString(), threadNum);
+        Path target = path.resolve(dependency.getArtifactId() + "-" + dependency.getVersion() + ".jar");
+        try {
+            if (HttpUtil.isLocal(url)) {
+                copyLocal(url, target, IntegrityIndex.of(libDirPath));
+                return CompletableFuture.completedFuture(null);
+            }
+            if (HttpUtil.isOffline()) {
+                throw new IOException("Cannot download " + url + " because JarFlow is offline");
+            }
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return downloadWithMultipleThreads(url, target.toFile(), threadNum, IntegrityIndex.of(libDirPath), listener);
     }
 
-    private static void downloadWithMultipleThreads(String fileUrl, String savePath, int threadNum)
-            throws InterruptedException, IOException {
-        logger.info("Ready to download {} with {} threads to {}", fileUrl, threadNum, savePath);
-
-        // 创建保存目录
-        File saveFile = new File(savePath);
-        File parentDir = saveFile.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
+    /**
+     * 校验一个已经存在但不在完整性索引中的文件，校验和不匹配时返回 false
+     */
+    public static boolean verifyExisting(String url, File jar, File libDirPath) throws IOException {
+        ChecksumVerifier.Digest digest = new ChecksumVerifier.Digest();
+        digest.update(jar);
+        String sha1 = digest.sha1();
+        boolean verified;
+        try {
+            verified = ChecksumVerifier.verify(url, sha1, digest.sha256());
+        } catch (ChecksumVerifier.ChecksumException e) {
+            logger.warn("{}, downloading it again", e.getMessage());
+            return false;
         }
+        // 没有可比对的校验和时也记下本地哈希，下次启动不必重新计算
+        IntegrityIndex.of(libDirPath).record(jar, sha1, verified);
+        return true;
+    }
 
-        HttpURLConnection connection = null;
+    private static void copyLocal(String url, Path target, IntegrityIndex index) throws IOException {
+        Path source = Paths.get(URI.create(url));
+        if (!Files.isRegularFile(source)) {
+            throw new FileNotFoundException("Local artifact does not exist: " + source);
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
         try {
-            URL url = new URL(fileUrl);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("HEAD");
-            connection.connect();
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            ChecksumVerifier.Digest digest = new ChecksumVerifier.Digest();
+            digest.update(temp.toFile());
+            String sha1 = digest.sha1();
+            boolean verified = ChecksumVerifier.verify(url, sha1, digest.sha256());
+            FileUtil.moveAtomically(temp, target);
+            index.record(target.toFile(), sha1, verified);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.info("Copied {} to {}", source, target);
+    }
 
-            // 检查服务器是否支持断点续传
-            String acceptRanges = connection.getHeaderField("Accept-Ranges");
-            boolean supportPartial = "bytes".equals(acceptRanges);
+    // 只有真正比对过校验和的文件才进入完整性索引，被替换的旧记录同时作废
+    private static CompletableFuture<Void> downloadWithMultipleThreads(String fileUrl, File saveFile, int threadNum,
+                                                                       IntegrityIndex index, DownloadListener listener) {
+        logger.info("Ready to download {} with up to {} threads to {}", fileUrl, threadNum, saveFile);
 
-            if (!supportPartial) {
-                logger.warn("Skipping partial download for {} because it is not supported", fileUrl);
-                threadNum = 1;
+        // 所有线程直接写入同一个预分配的临时文件，完成后原子重命名；只有重命名后的文件才算下载完成
+        File tempFile = new File(saveFile.getParent(), saveFile.getName() + ".download");
+        File progressFile = new File(saveFile.getParent(), saveFile.getName() + ".download.progress");
+        DownloadProgress previous = DownloadProgress.load(progressFile, tempFile, fileUrl, chunkSize);
+        RandomAccessFile output;
+        try {
+            output = new RandomAccessFile(tempFile, "rw");
+            if (previous == null) {
+                output.setLength(0);
             }
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
 
-            long fileSize = connection.getContentLengthLong();
-            logger.info("Start to download {} (size: {})", fileUrl, formatFileSize(fileSize));
-
-            // 计算每个线程下载的字节范围
-            long blockSize = fileSize / threadNum;
-
-            // 创建线程池
-            ExecutorService executor = Executors.newFixedThreadPool(threadNum);
-            List<DownloadTask> tasks = new ArrayList<>();
+        ChecksumVerifier.Digest digest = new ChecksumVerifier.Digest();
+        CompletableFuture<DownloadProgress> first;
+        if (previous != null) {
+            logger.info("Resuming download of {} from {}", fileUrl, tempFile);
+            first = CompletableFuture.completedFuture(previous);
+        } else {
+            first = withRetry(fileUrl, () -> downloadFirstChunk(fileUrl, output, progressFile, digest, listener));
+        }
+        // 单次请求下载的文件在写入时已经算好了哈希，分块下载的文件乱序到达，完成后再统一计算
+        AtomicBoolean streamed = new AtomicBoolean();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        first.thenCompose(progress -> {
+                    if (progress == null) {
+                        streamed.set(true);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return downloadChunks(output.getChannel(), progress, threadNum, listener);
+                })
+                .whenComplete((v, error) -> {
+                    Throwable failure = finish(fileUrl, output, tempFile, progressFile, saveFile,
+                            streamed.get() ? digest : null, index, error);
+                    if (failure == null) {
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(failure);
+                    }
+                });
+        return result;
+    }
 
-            // 创建临时文件目录
-            File tempDir = new File(saveFile.getParent(), saveFile.getName() + "_temp");
-            if (!tempDir.exists()) {
-                tempDir.mkdir();
+    // 失败时保留临时文件和进度，下次启动可以继续下载
+    private static Throwable finish(String fileUrl, RandomAccessFile output, File tempFile, File progressFile,
+                                    File saveFile, ChecksumVerifier.Digest digest, IntegrityIndex index, Throwable error) {
+        try {
+            try {
+                if (error == null) {
+                    output.getChannel().force(false);
+                }
+            } finally {
+                output.close();
             }
-
-            // 创建下载任务
-            for (int i = 0; i < threadNum; i++) {
-                long start = i * blockSize;
-                long end = (i == threadNum - 1) ? fileSize - 1 : start + blockSize - 1;
-
-                String partFileName = saveFile.getName() + ".part" + i;
-                File partFile = new File(tempDir, partFileName);
-
-                DownloadTask task = new DownloadTask(fileUrl, partFile, start, end, i);
-                tasks.add(task);
-                executor.execute(task);
+            if (error == null) {
+                if (digest == null) {
+                    digest = new ChecksumVerifier.Digest();
+                    digest.update(tempFile);
+                }
+                String sha1 = digest.sha1();
+                boolean verified;
+                try {
+                    verified = ChecksumVerifier.verify(fileUrl, sha1, digest.sha256());
+                } catch (ChecksumVerifier.ChecksumException e) {
+                    // 内容已损坏，不能续传
+                    Files.deleteIfExists(progressFile.toPath());
+                    throw e;
+                }
+                FileUtil.moveAtomically(tempFile.toPath(), saveFile.toPath());
+                Files.deleteIfExists(progressFile.toPath());
+                index.record(saveFile, sha1, verified);
+                logger.info("Successfully downloaded {} to {}", fileUrl, saveFile);
+                return null;
             }
+        } catch (IOException e) {
+            error = e;
+        }
+        if (!progressFile.exists()) {
+            try {
+                Files.deleteIfExists(tempFile.toPath());
+            } catch (IOException e) {
+                logger.warn("Failed to delete {}, caused by: {}", tempFile, e.getMessage());
+            }
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            // 调用方取消了加载，保留进度即可
+            logger.debug("Download of {} was cancelled", fileUrl);
+            return cause;
+        }
+        logger.error("Failed to download {}, caused by: {}", fileUrl, cause.getMessage());
+        return cause instanceof IOException ? cause : new IOException("Failed to download " + fileUrl, cause);
+    }
 
-            executor.shutdown();
-            executor.awaitTermination(1, TimeUnit.HOURS);
-
-            // 检查所有任务是否完成
-            boolean allSuccess = true;
-            for (DownloadTask task : tasks) {
-                if (!task.isSuccess()) {
-                    allSuccess = false;
-                    logger.error("Task {} failed", task);
+    /**
+     * 第一个请求只取第一个分块，并从 Content-Range 得知文件大小。小文件一次请求即可完成并返回 null，
+     * 大文件返回记录了剩余分块的下载进度。
+     */
+    private static DownloadProgress downloadFirstChunk(String fileUrl, RandomAccessFile output, File progressFile,
+                                                       ChecksumVerifier.Digest digest, DownloadListener listener)
+            throws IOException, InterruptedException {
+        FileChannel channel = output.getChannel();
+        digest.reset();
+        try (HttpResponse response = HttpUtil.getTransport().get(fileUrl,
+                Collections.singletonMap("Range", "bytes=0-" + (chunkSize - 1)))) {
+            if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                // 服务器忽略了范围请求，直接顺序写入整个文件
+                channel.truncate(0);
+                long size = write(response, channel, 0, digest, listener);
+                if (response.getContentLength() >= 0) {
+                    checkLength(fileUrl, size, response.getContentLength());
                 }
+                logger.info("Downloaded {} in a single request (size: {})", fileUrl, formatFileSize(size));
+                return null;
+            }
+            checkStatus(response, HttpURLConnection.HTTP_PARTIAL);
+            long fileSize = parseTotalSize(response.getHeader("Content-Range"));
+            if (fileSize < 0) {
+                downloadWhole(fileUrl, channel, digest, listener);
+                return null;
             }
+            output.setLength(fileSize);
+            long written = write(response, channel, 0, digest, listener);
+            checkLength(fileUrl, written, Math.min(chunkSize, fileSize));
+            if (written >= fileSize) {
+                logger.info("Downloaded {} in a single request (size: {})", fileUrl, formatFileSize(written));
+                return null;
+            }
+            logger.info("Start to download {} (size: {})", fileUrl, formatFileSize(fileSize));
+            DownloadProgress progress = new DownloadProgress(progressFile, fileUrl, fileSize, chunkSize);
+            // 进度文件只能记录已经落盘的分块
+            channel.force(false);
+            progress.markDone(0);
+            return progress;
+        }
+    }
 
-            if (allSuccess) {
-                // 合并文件
-                mergeFiles(tasks, saveFile);
-                // 删除临时目录
-                deleteDirectory(tempDir);
-                logger.info("Successfully downloaded {} to {}", fileUrl, savePath);
-            } else {
-                logger.error("Download failed");
+    // 每个 worker 依次把分块提交给调度器，从共享队列中争抢分块
+    private static CompletableFuture<Void> downloadChunks(FileChannel channel, DownloadProgress progress, int threadNum,
+                                                          DownloadListener listener) {
+        Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < progress.getChunkCount(); i++) {
+            if (!progress.isDone(i)) {
+                long start = (long) i * progress.getChunkSize();
+                chunks.add(new Chunk(i, start, Math.min(start + progress.getChunkSize(), progress.getSize()) - 1));
             }
+        }
+        int workers = Math.max(1, Math.min(threadNum, chunks.size()));
+        CompletableFuture<?>[] futures = new CompletableFuture[workers];
+        ChunkWorker[] chunkWorkers = new ChunkWorker[workers];
+        for (int i = 0; i < workers; i++) {
+            ChunkWorker worker = new ChunkWorker(progress, channel, chunks, i, listener);
+            chunkWorkers[i] = worker;
+            futures[i] = worker.run().thenRun(() -> {
+                if (!worker.isSuccess() && worker.getCancellation() == null) {
+                    logger.warn("Task {} failed, caused by: {}", worker.getThreadId(), worker.getErrorMessage());
+                }
+            });
+        }
+        // 失败线程的分块会放回队列，只要队列被清空就说明所有分块都已写入
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            // 被取消的分块同样留在队列里，此时按取消处理而不是下载失败
+            for (ChunkWorker worker : chunkWorkers) {
+                if (worker.getCancellation() != null) {
+                    throw worker.getCancellation();
+                }
+            }
+            if (!chunks.isEmpty() || !progress.isValid()) {
+                throw new CompletionException(new IOException(chunks.size() + " chunks of " + progress.getUrl() + " could not be downloaded"));
+            }
+            return null;
+        });
+    }
 
-        } catch (IOException e) {
-            logger.error("Failed to download {}, caused by: {}", fileUrl, e.getMessage());
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+    private static void downloadWhole(String fileUrl, FileChannel channel, ChecksumVerifier.Digest digest,
+                                      DownloadListener listener) throws IOException {
+        try (HttpResponse response = HttpUtil.getTransport().get(fileUrl, Collections.emptyMap())) {
+            checkStatus(response, HttpURLConnection.HTTP_OK);
+            channel.truncate(0);
+            digest.reset();
+            long size = write(response, channel, 0, digest, listener);
+            if (response.getContentLength() >= 0) {
+                checkLength(fileUrl, size, response.getContentLength());
             }
+            logger.info("Downloaded {} in a single request (size: {})", fileUrl, formatFileSize(size));
+        }
+    }
+
+    private static void checkStatus(HttpResponse response, int expected) throws IOException {
+        int status = response.getStatus();
+        if (status == expected) {
+            return;
+        }
+        // 除了限流以外的 4xx 重试也没有意义
+        boolean retryable = status >= 500 || status == 429;
+        String message = "服务器响应异常，响应码: " + status;
+        throw retryable ? new IOException(message) : new FatalDownloadException(message);
+    }
+
+    // 连接提前断开时读取也会正常结束，所以要核对写入的字节数，不足时按普通错误重试
+    private static void checkLength(String fileUrl, long written, long expected) throws IOException {
+        if (written != expected) {
+            throw new IOException("Received " + written + " of " + expected + " bytes from " + fileUrl);
         }
     }
 
     /**
-     * 合并下载的文件部分
+     * 在当前的调度器上执行，失败后按指数退避加随机抖动重试；等待期间不占用下载线程
      */
-    private static void mergeFiles(List<DownloadTask> tasks, File outputFile) throws IOException {
-        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-            for (DownloadTask task : tasks) {
-                File partFile = task.getPartFile();
-                try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(partFile))) {
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, bytesRead);
-                    }
-                }
+    private static <T> CompletableFuture<T> withRetry(String fileUrl, IOCallable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(fileUrl, task, 0, result);
+        return result;
+    }
+
+    private static <T> void attempt(String fileUrl, IOCallable<T> task, int attempt, CompletableFuture<T> result) {
+        scheduler.submit(fileUrl, task::call).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
             }
+            if (!(error instanceof IOException) || error instanceof FatalDownloadException || attempt >= maxRetries) {
+                result.completeExceptionally(error);
+                return;
+            }
+            long delay = Math.min(maxRetryDelay, retryBaseDelay << attempt);
+            long wait = ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+            logger.warn("Request to {} failed ({}), retrying in {} ms", fileUrl, error.getMessage(), wait);
+            retryTimer.schedule(() -> attempt(fileUrl, task, attempt + 1, result), wait, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    // Content-Range: bytes 0-1048575/12345678，总大小未知时返回 -1
+    private static long parseTotalSize(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
-    /**
-     * 删除目录及其内容
-     */
-    private static void deleteDirectory(File dir) {
-        if (dir.isDirectory()) {
-            File[] files = dir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    deleteDirectory(file);
-                }
+    private static long write(HttpResponse response, FileChannel channel, long start,
+                              @Nullable ChecksumVerifier.Digest digest, DownloadListener listener) throws IOException {
+        ReadableByteChannel input = Channels.newChannel(response.getBody());
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        long position = start;
+        while (input.read(buffer) != -1) {
+            // through Buffer, so class files built on a newer JDK do not link against ByteBuffer.flip() on Java 8
+            ((Buffer) buffer).flip();
+            if (digest != null) {
+                digest.update(buffer);
+            }
+            int length = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
             }
+            Metrics.transferred(length);
+            listener.transferred(length);
+            ((Buffer) buffer).clear();
         }
-        dir.delete();
+        return position - start;
     }
 
     /**
@@ -165,79 +444,97 @@ public class DependencyDownloader {
         }
     }
 
-    /**
-     * 下载任务类
-     */
-    static class DownloadTask implements Runnable {
-        private final String fileUrl;
-        @Getter
-        private final File partFile;
+    interface IOCallable<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    // 不值得重试的错误，例如 404
+    static class FatalDownloadException extends IOException {
+        FatalDownloadException(String message) {
+            super(message);
+        }
+    }
+
+    @Getter
+    static class Chunk {
+        private final int index;
         private final long start;
         private final long end;
+
+        Chunk(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * 下载任务，从共享队列中不断取出分块，快的连接自然会多下载一些
+     */
+    static class ChunkWorker {
+        private final DownloadProgress progress;
+        private final FileChannel channel;
+        private final Queue<Chunk> chunks;
         @Getter
         private final int threadId;
         @Getter
         private boolean success = false;
         @Getter
         private String errorMessage;
-
-        public DownloadTask(String fileUrl, File partFile, long start, long end, int threadId) {
-            this.fileUrl = fileUrl;
-            this.partFile = partFile;
-            this.start = start;
-            this.end = end;
+        @Getter
+        private CancellationException cancellation;
+        private final DownloadListener listener;
+        private long total;
+
+        public ChunkWorker(DownloadProgress progress, FileChannel channel, Queue<Chunk> chunks, int threadId,
+                           DownloadListener listener) {
+            this.progress = progress;
+            this.channel = channel;
+            this.chunks = chunks;
             this.threadId = threadId;
+            this.listener = listener;
         }
 
-        @Override
-        public void run() {
-            HttpURLConnection connection = null;
-            InputStream input = null;
-            RandomAccessFile output = null;
-
-            try {
-                URL url = new URL(fileUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
-                connection.connect();
-
-                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
-                    throw new IOException("服务器不支持范围请求，响应码: " + connection.getResponseCode());
-                }
-
-                // 创建父目录
-                File parent = partFile.getParentFile();
-                if (parent != null && !parent.exists()) {
-                    parent.mkdirs();
-                }
-
-                input = connection.getInputStream();
-                output = new RandomAccessFile(partFile, "rw");
-
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                long totalRead = 0;
-
-                while ((bytesRead = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, bytesRead);
-                    totalRead += bytesRead;
+        // 完成时队列已空，或者本任务失败并把分块放回了队列
+        public CompletableFuture<Void> run() {
+            Chunk chunk = progress.isValid() ? chunks.poll() : null;
+            if (chunk == null) {
+                success = progress.isValid();
+                logger.debug("Thread id {} download completed (size: {})", threadId, formatFileSize(total));
+                return CompletableFuture.completedFuture(null);
+            }
+            return withRetry(progress.getUrl(), () -> fetch(chunk)).handle((written, error) -> {
+                if (error != null) {
+                    // 放回队列，交给其他任务重试
+                    chunks.add(chunk);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    errorMessage = cause.getMessage();
+                    if (cause instanceof CancellationException) {
+                        cancellation = (CancellationException) cause;
+                    }
+                    return false;
                 }
+                total += written;
+                return true;
+            }).thenCompose(next -> next ? run() : CompletableFuture.<Void>completedFuture(null));
+        }
 
-                success = true;
-                logger.debug("Thread id {} download completed (size: {})", threadId, formatFileSize(totalRead));
-
-            } catch (IOException e) {
-                errorMessage = e.getMessage();
-            } finally {
-                try {
-                    if (input != null) input.close();
-                    if (output != null) output.close();
-                    if (connection != null) connection.disconnect();
-                } catch (IOException e) {
-                    logger.error("Failed to close stream, caused by: {}", e.getMessage());
+        private long fetch(Chunk chunk) throws IOException {
+            String fileUrl = progress.getUrl();
+            try (HttpResponse response = HttpUtil.getTransport().get(fileUrl,
+                    Collections.singletonMap("Range", "bytes=" + chunk.getStart() + "-" + chunk.getEnd()))) {
+                checkStatus(response, HttpURLConnection.HTTP_PARTIAL);
+                if (parseTotalSize(response.getHeader("Content-Range")) != progress.getSize()) {
+                    progress.invalidate();
+                    throw new FatalDownloadException("Remote file changed while downloading");
                 }
+                long written = write(response, channel, chunk.getStart(), null, listener);
+                checkLength(fileUrl, written, chunk.getEnd() - chunk.getStart() + 1);
+                // 进度文件只能记录已经落盘的分块
+                channel.force(false);
+                progress.markDone(chunk.getIndex());
+                return written;
             }
         }
-
     }
-}
\ No newline at end of file
+}
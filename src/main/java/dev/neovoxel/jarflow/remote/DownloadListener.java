@@ -0,0 +1,13 @@
+package dev.neovoxel.jarflow.remote;
+
+/**
+ * Receives the number of bytes written to disk while an artifact downloads, possibly from several download threads
+ * at once. Throwing an unchecked exception aborts the download; its partial progress is kept for resuming.
+ */
+@FunctionalInterface
+public interface DownloadListener {
+
+    DownloadListener NONE = bytes -> {};
+
+    void transferred(long bytes);
+}
@@ -0,0 +1,126 @@
+package dev.neovoxel.jarflow.remote;
+
+import dev.neovoxel.jarflow.util.FileUtil;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Properties;
+
+/**
+ * Chunks of a partially downloaded file that are already on disk, persisted next to the {@code .download} file
+ * so an interrupted download continues where it stopped.
+ */
+class DownloadProgress {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Downloader");
+
+    private final File file;
+
+    @Getter
+    private final String url;
+
+    @Getter
+    private final long size;
+
+    @Getter
+    private final int chunkSize;
+
+    private final BitSet done;
+
+    private boolean valid = true;
+
+    DownloadProgress(File file, String url, long size, int chunkSize) {
+        this(file, url, size, chunkSize, new BitSet());
+    }
+
+    private DownloadProgress(File file, String url, long size, int chunkSize, BitSet done) {
+        this.file = file;
+        this.url = url;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.done = done;
+    }
+
+    /**
+     * Loads the progress of a previous attempt, or returns null when it belongs to another url, chunk size or file.
+     */
+    @Nullable
+    static DownloadProgress load(File file, File data, String url, int chunkSize) {
+        if (!file.isFile() || !data.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            long size = Long.parseLong(properties.getProperty("size"));
+            if (!url.equals(properties.getProperty("url"))
+                    || chunkSize != Integer.parseInt(properties.getProperty("chunkSize"))
+                    || data.length() != size) {
+                return null;
+            }
+            BitSet done = new BitSet();
+            String chunks = properties.getProperty("done", "");
+            for (String index : chunks.split(",")) {
+                if (!index.isEmpty()) done.set(Integer.parseInt(index));
+            }
+            return new DownloadProgress(file, url, size, chunkSize, done);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Ignoring unreadable download progress {}, caused by: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    int getChunkCount() {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    synchronized boolean isDone(int index) {
+        return done.get(index);
+    }
+
+    synchronized boolean isValid() {
+        return valid;
+    }
+
+    synchronized void markDone(int index) throws IOException {
+        done.set(index);
+        if (valid) {
+            save();
+        }
+    }
+
+    // the remote file no longer matches what is on disk, so the next attempt has to start over
+    synchronized void invalidate() {
+        valid = false;
+        delete();
+    }
+
+    synchronized void delete() {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete {}", file);
+        }
+    }
+
+    private void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        properties.setProperty("size", String.valueOf(size));
+        properties.setProperty("chunkSize", String.valueOf(chunkSize));
+        StringBuilder chunks = new StringBuilder();
+        for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+            if (chunks.length() > 0) chunks.append(',');
+            chunks.append(i);
+        }
+        properties.setProperty("done", chunks.toString());
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        FileUtil.moveAtomically(temp.toPath(), file.toPath());
+    }
+}
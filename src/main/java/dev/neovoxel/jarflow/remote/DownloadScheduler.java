@@ -0,0 +1,159 @@
+package dev.neovoxel.jarflow.remote;
+
+import lombok.Getter;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived pool shared by every download. At most {@code maxConcurrency} jobs run at once, and at most
+ * {@code maxPerHost} of them against the same host; jobs over the host limit wait in a per-host queue
+ * without holding a pool thread.
+ */
+public class DownloadScheduler {
+
+    @Getter
+    private final int maxConcurrency;
+
+    @Getter
+    private final int maxPerHost;
+
+    private final ExecutorService executor;
+
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+
+    // jobs submitted but not yet finished, guarded by this
+    private int outstanding;
+
+    private boolean shutdown;
+
+    public DownloadScheduler(int maxConcurrency, int maxPerHost) {
+        if (maxConcurrency < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerHost = maxPerHost;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "JarFlow Downloader #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(String url, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                future.completeExceptionally(new RejectedExecutionException("Download scheduler has been shut down"));
+                return future;
+            }
+            outstanding++;
+        }
+        Job<T> job = new Job<>(future, task, hosts.computeIfAbsent(hostOf(url), key -> new HostQueue()));
+        if (job.host.offer(job)) {
+            dispatch(job);
+        }
+        return future;
+    }
+
+    /**
+     * Stops the pool once every submitted job has finished. Downloads that are still running may keep
+     * submitting their remaining chunks until then; later submissions fail.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (outstanding == 0) {
+            executor.shutdown();
+        }
+    }
+
+    private void dispatch(Job<?> job) {
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            job.reject(e);
+        }
+    }
+
+    private synchronized void finished() {
+        if (--outstanding == 0 && shutdown) {
+            executor.shutdown();
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URL target = new URL(url);
+            return target.getProtocol() + "://" + target.getAuthority();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private class Job<T> implements Runnable {
+        private final CompletableFuture<T> future;
+        private final Callable<T> task;
+        private final HostQueue host;
+
+        private Job(CompletableFuture<T> future, Callable<T> task, HostQueue host) {
+            this.future = future;
+            this.task = task;
+            this.host = host;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                done();
+            }
+        }
+
+        void reject(RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            done();
+        }
+
+        // the next job of the host is dispatched before this one counts as finished, so the pool cannot stop in between
+        private void done() {
+            Job<?> next = host.finish();
+            if (next != null) {
+                dispatch(next);
+            }
+            finished();
+        }
+    }
+
+    private class HostQueue {
+        private final Queue<Job<?>> pending = new ArrayDeque<>();
+        private int active;
+
+        // returns true when the job may run right away
+        synchronized boolean offer(Job<?> job) {
+            if (active < maxPerHost) {
+                active++;
+                return true;
+            }
+            pending.add(job);
+            return false;
+        }
+
+        // hands the finished job's slot to the next waiting job, if any
+        synchronized Job<?> finish() {
+            Job<?> next = pending.poll();
+            if (next == null) {
+                active--;
+            }
+            return next;
+        }
+    }
+}
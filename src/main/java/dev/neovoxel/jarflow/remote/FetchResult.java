@@ -0,0 +1,26 @@
+package dev.neovoxel.jarflow.remote;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+@Getter
+public class FetchResult {
+    // -1 when no response was received (offline, timeout, connection failure)
+    private final int status;
+
+    @Nullable
+    private final String content;
+
+    public FetchResult(int status, @Nullable String content) {
+        this.status = status;
+        this.content = content;
+    }
+
+    public boolean isSuccess() {
+        return content != null;
+    }
+
+    public boolean isNotFound() {
+        return status == 404;
+    }
+}
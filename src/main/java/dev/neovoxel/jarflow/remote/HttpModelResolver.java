@@ -16,7 +16,7 @@ public class HttpModelResolver implements ModelResolver {
     @Override
     public ModelSource resolveModel(String groupId, String artifactId, String version) {
         String path = groupId.replace(".", "/") + "/" + artifactId + "/" + version + "/" + artifactId + "-" + version + ".pom";
-        String content = HttpUtil.get(repoUrl + path);
+        String content = PomCache.get(repoUrl, path);
         return new StringModelSource(content);
     }
 
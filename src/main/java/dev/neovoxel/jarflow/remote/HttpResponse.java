@@ -0,0 +1,26 @@
+package dev.neovoxel.jarflow.remote;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface HttpResponse extends Closeable {
+
+    int getStatus();
+
+    @Nullable
+    String getHeader(String name);
+
+    // -1 when the server did not send a length
+    long getContentLength();
+
+    InputStream getBody() throws IOException;
+
+    /**
+     * Releases the response. Implementations drain whatever is left of the body so the connection stays reusable.
+     */
+    @Override
+    void close() throws IOException;
+}
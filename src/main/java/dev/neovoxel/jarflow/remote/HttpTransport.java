@@ -0,0 +1,15 @@
+package dev.neovoxel.jarflow.remote;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Performs the HTTP requests JarFlow makes against repositories. Implementations must be thread-safe,
+ * and every returned response has to be closed so its connection can be reused.
+ */
+public interface HttpTransport {
+
+    HttpResponse get(String url, Map<String, String> headers) throws IOException;
+
+    HttpResponse head(String url) throws IOException;
+}
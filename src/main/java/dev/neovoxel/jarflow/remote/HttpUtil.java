@@ -1,22 +1,82 @@
 package dev.neovoxel.jarflow.remote;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import dev.neovoxel.jarflow.metrics.Metrics;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
 
 public class HttpUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Http");
+
+    // when set, only file: urls are served and every remote request fails immediately
+    @Setter
+    @Getter
+    private static boolean offline = false;
+
+    @Setter
+    @Getter
+    private static HttpTransport transport = new KeepAliveTransport();
+
+    public static boolean isLocal(String url) {
+        return url.startsWith("file:");
+    }
+
     public static String get(String url) {
-        try {
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-            con.setRequestMethod("GET");
-            int responseCode = con.getResponseCode();
-            if (responseCode == 200) {
-                java.util.Scanner scanner = new java.util.Scanner(con.getInputStream());
-                return scanner.useDelimiter("\\Z").next();
+        return fetch(url).getContent();
+    }
+
+    public static FetchResult fetch(String url) {
+        if (isLocal(url)) {
+            String content = readLocal(url);
+            return new FetchResult(content != null ? 200 : 404, content);
+        }
+        if (offline) {
+            logger.debug("Skipping {} because JarFlow is offline", url);
+            return new FetchResult(-1, null);
+        }
+        try (HttpResponse response = transport.get(url, Collections.emptyMap())) {
+            if (response.getStatus() == 200) {
+                return new FetchResult(200, readString(response.getBody()));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return new FetchResult(response.getStatus(), null);
+        } catch (IOException e) {
+            logger.warn("Failed to get {}, caused by: {}", url, e.getMessage());
+        }
+        return new FetchResult(-1, null);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+        }
+        Metrics.transferred(out.size());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String readLocal(String url) {
+        File file = new File(URI.create(url));
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to read {}, caused by: {}", file, e.getMessage());
+            return null;
         }
-        return null;
     }
 }
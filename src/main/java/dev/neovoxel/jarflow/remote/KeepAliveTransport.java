@@ -0,0 +1,143 @@
+package dev.neovoxel.jarflow.remote;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Default transport built on {@link HttpURLConnection}. Connections are never disconnected; bodies are read to
+ * the end before release, which hands the socket back to the JDK keep-alive cache. The number of concurrent
+ * requests per host is capped so that many small requests are funneled through a few persistent connections
+ * instead of each paying its own TCP and TLS handshake.
+ */
+public class KeepAliveTransport implements HttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Http");
+
+    // the JDK keeps at most 5 idle connections per destination unless http.maxConnections says otherwise
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = Integer.getInteger("http.maxConnections", 5);
+
+    // larger leftovers are cheaper to abandon than to drain
+    private static final long MAX_DRAIN_BYTES = 64 * 1024;
+
+    @Getter
+    private final int maxConnectionsPerHost;
+
+    @Getter
+    private final int connectTimeout;
+
+    @Getter
+    private final int readTimeout;
+
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    public KeepAliveTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, 10_000, 30_000);
+    }
+
+    public KeepAliveTransport(int maxConnectionsPerHost, int connectTimeout, int readTimeout) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public HttpResponse get(String url, Map<String, String> headers) throws IOException {
+        return execute("GET", url, headers);
+    }
+
+    @Override
+    public HttpResponse head(String url) throws IOException {
+        return execute("HEAD", url, Collections.emptyMap());
+    }
+
+    private HttpResponse execute(String method, String url, Map<String, String> headers) throws IOException {
+        URL target = new URL(url);
+        Semaphore permits = hosts.computeIfAbsent(target.getProtocol() + "://" + target.getAuthority(),
+                key -> new Semaphore(maxConnectionsPerHost, true));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + target.getHost(), e);
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            int status = connection.getResponseCode();
+            return new Response(connection, status, permits);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static class Response implements HttpResponse {
+        private final HttpURLConnection connection;
+        @Getter
+        private final int status;
+        private final Semaphore permits;
+        private InputStream body;
+        private boolean closed;
+
+        private Response(HttpURLConnection connection, int status, Semaphore permits) {
+            this.connection = connection;
+            this.status = status;
+            this.permits = permits;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if (body == null) {
+                    body = new java.io.ByteArrayInputStream(new byte[0]);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try (InputStream in = getBody()) {
+                byte[] buffer = new byte[8192];
+                long drained = 0;
+                int bytesRead;
+                while (drained < MAX_DRAIN_BYTES && (bytesRead = in.read(buffer)) != -1) {
+                    drained += bytesRead;
+                }
+            } catch (IOException e) {
+                logger.debug("Failed to drain response, caused by: {}", e.getMessage());
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package dev.neovoxel.jarflow.remote;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.repository.Repository;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns version ranges, {@code LATEST}, {@code RELEASE} and {@code -SNAPSHOT} versions into concrete versions using
+ * the {@code maven-metadata.xml} of each repository. Metadata is fetched at most once per repository and
+ * groupId:artifactId (or snapshot version) within {@link #ttl}, even when many nodes ask for it at the same time.
+ */
+public class MetadataResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Metadata");
+
+    private static final String METADATA = "maven-metadata.xml";
+
+    // maven install writes this name into the local repository instead
+    private static final String LOCAL_METADATA = "maven-metadata-local.xml";
+
+    @Setter
+    @Getter
+    private static long ttl = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    private static final AtomicLong fetches = new AtomicLong();
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    public static boolean isDynamic(String version) {
+        return version != null && (version.startsWith("[") || version.startsWith("(")
+                || version.equals("LATEST") || version.equals("RELEASE"));
+    }
+
+    public static boolean isSnapshot(String version) {
+        return version != null && version.endsWith("-SNAPSHOT");
+    }
+
+    /**
+     * Returns the highest version matching the range, {@code LATEST} or {@code RELEASE} of {@code dependency} over
+     * all {@code repositories}, or null if none matches. Exact versions are returned unchanged.
+     */
+    @Nullable
+    public static String resolveVersion(Dependency dependency, Collection<Repository> repositories) {
+        String spec = dependency.getVersion();
+        if (!isDynamic(spec)) {
+            return spec;
+        }
+        Set<String> versions = new LinkedHashSet<>();
+        String latest = null;
+        String release = null;
+        for (Repository repository : repositories) {
+            Metadata metadata = get(repository.getUrl(), dependency.getGroupId(), dependency.getArtifactId(), null);
+            if (metadata == null) continue;
+            versions.addAll(metadata.versions);
+            latest = max(latest, metadata.latest);
+            release = max(release, metadata.release);
+        }
+        String resolved;
+        if (spec.equals("LATEST")) {
+            resolved = latest != null ? latest : highest(versions, null, true);
+        } else if (spec.equals("RELEASE")) {
+            resolved = release != null ? release : highest(versions, null, false);
+        } else {
+            try {
+                resolved = highest(versions, VersionRange.createFromVersionSpec(spec), false);
+            } catch (InvalidVersionSpecificationException e) {
+                logger.error("Invalid version range {} of {}:{}", spec, dependency.getGroupId(), dependency.getArtifactId());
+                return null;
+            }
+        }
+        logger.debug("Resolved {}:{}:{} to {}", dependency.getGroupId(), dependency.getArtifactId(), spec, resolved);
+        return resolved;
+    }
+
+    /**
+     * Returns the file version of a snapshot in {@code repositoryUrl}, such as {@code 1.0-20240101.120000-3}, the
+     * base version when the repository stores it without a timestamp, or null if the repository has no metadata
+     * for it.
+     */
+    @Nullable
+    public static String resolveSnapshot(String repositoryUrl, Dependency dependency, String extension) {
+        Metadata metadata = get(repositoryUrl, dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+        if (metadata == null) {
+            return null;
+        }
+        String value = metadata.snapshotValues.get(extension + ":");
+        if (value != null) {
+            return value;
+        }
+        if (metadata.localCopy || metadata.timestamp == null || metadata.buildNumber == null) {
+            return dependency.getVersion();
+        }
+        String base = dependency.getVersion().substring(0, dependency.getVersion().length() - "SNAPSHOT".length());
+        return base + metadata.timestamp + "-" + metadata.buildNumber;
+    }
+
+    public static long getFetches() {
+        return fetches.get();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    @Nullable
+    private static Metadata get(String repositoryUrl, String groupId, String artifactId, @Nullable String version) {
+        String path = groupId.replace('.', '/') + "/" + artifactId + "/" + (version == null ? "" : version + "/");
+        String key = repositoryUrl + path;
+        long now = System.currentTimeMillis();
+        CompletableFuture<Metadata> created = new CompletableFuture<>();
+        Cached cached = cache.compute(key, (k, old) -> old != null && old.expiry > now ? old : new Cached(created, now + ttl));
+        if (cached.future == created) {
+            try {
+                FetchResult result = fetch(repositoryUrl, path);
+                // only a 404 is remembered as a miss, timeouts and server errors are asked again next time
+                if (!result.isSuccess() && !result.isNotFound()) {
+                    cache.remove(key, cached);
+                }
+                created.complete(result.isSuccess() ? parse(repositoryUrl + path, result.getContent()) : null);
+            } catch (RuntimeException e) {
+                cache.remove(key, cached);
+                created.completeExceptionally(e);
+            }
+        }
+        return cached.future.join();
+    }
+
+    private static FetchResult fetch(String repositoryUrl, String path) {
+        fetches.incrementAndGet();
+        FetchResult result = HttpUtil.fetch(repositoryUrl + path + METADATA);
+        if (!result.isSuccess() && HttpUtil.isLocal(repositoryUrl)) {
+            result = HttpUtil.fetch(repositoryUrl + path + LOCAL_METADATA);
+        }
+        return result;
+    }
+
+    @Nullable
+    private static Metadata parse(String location, String content) {
+        try {
+            return parse(content);
+        } catch (XMLStreamException e) {
+            logger.warn("Failed to parse {}, caused by: {}", location + METADATA, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Metadata parse(String content) throws XMLStreamException {
+        Metadata metadata = new Metadata();
+        XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(content));
+        try {
+            Deque<String> path = new ArrayDeque<>();
+            String classifier = "";
+            String extension = null;
+            String value = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    String parent = path.isEmpty() ? "" : path.peek();
+                    if (parent.equals("versions") && name.equals("version")) {
+                        metadata.versions.add(reader.getElementText().trim());
+                    } else if (parent.equals("versioning") && (name.equals("latest") || name.equals("release"))) {
+                        String text = reader.getElementText().trim();
+                        if (name.equals("latest")) metadata.latest = text;
+                        else metadata.release = text;
+                    } else if (parent.equals("snapshot") && (name.equals("timestamp") || name.equals("buildNumber") || name.equals("localCopy"))) {
+                        String text = reader.getElementText().trim();
+                        if (name.equals("timestamp")) metadata.timestamp = text;
+                        else if (name.equals("buildNumber")) metadata.buildNumber = text;
+                        else metadata.localCopy = Boolean.parseBoolean(text);
+                    } else if (parent.equals("snapshotVersion") && (name.equals("classifier") || name.equals("extension") || name.equals("value"))) {
+                        String text = reader.getElementText().trim();
+                        if (name.equals("classifier")) classifier = text;
+                        else if (name.equals("extension")) extension = text;
+                        else value = text;
+                    } else {
+                        path.push(name);
+                    }
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    String name = path.pop();
+                    if (name.equals("snapshotVersion")) {
+                        if (extension != null && value != null) {
+                            metadata.snapshotValues.put(extension + ":" + classifier, value);
+                        }
+                        classifier = "";
+                        extension = null;
+                        value = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return metadata;
+    }
+
+    @Nullable
+    private static String highest(Collection<String> versions, @Nullable VersionRange range, boolean snapshots) {
+        DefaultArtifactVersion best = null;
+        for (String version : versions) {
+            if (!snapshots && isSnapshot(version)) continue;
+            DefaultArtifactVersion candidate = new DefaultArtifactVersion(version);
+            if (range != null && !range.containsVersion(candidate)) continue;
+            if (best == null || candidate.compareTo(best) > 0) {
+                best = candidate;
+            }
+        }
+        return best == null ? null : best.toString();
+    }
+
+    private static String max(@Nullable String current, @Nullable String candidate) {
+        if (current == null) return candidate;
+        if (candidate == null) return current;
+        return new DefaultArtifactVersion(candidate).compareTo(new DefaultArtifactVersion(current)) > 0 ? candidate : current;
+    }
+
+    private static class Cached {
+        private final CompletableFuture<Metadata> future;
+        private final long expiry;
+
+        private Cached(CompletableFuture<Metadata> future, long expiry) {
+            this.future = future;
+            this.expiry = expiry;
+        }
+    }
+
+    private static class Metadata {
+        private final List<String> versions = new ArrayList<>();
+        private final Map<String, String> snapshotValues = new HashMap<>();
+        private String latest;
+        private String release;
+        private String timestamp;
+        private String buildNumber;
+        private boolean localCopy;
+    }
+}
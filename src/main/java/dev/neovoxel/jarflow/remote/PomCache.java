@@ -0,0 +1,202 @@
+package dev.neovoxel.jarflow.remote;
+
+import dev.neovoxel.jarflow.metrics.Metrics;
+import dev.neovoxel.jarflow.util.FileUtil;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PomCache {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Cache");
+
+    private static final String REPOSITORY_SUFFIX = ".repository";
+
+    @Getter
+    private static File directory = new File("libs");
+
+    @Getter
+    private static int memoryCapacity = 1024;
+
+    private static final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PomCache.Entry> eldest) {
+            return size() > memoryCapacity;
+        }
+    };
+
+    private static final AtomicLong memoryHits = new AtomicLong();
+
+    private static final AtomicLong diskHits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    public static void setDirectory(File directory) {
+        PomCache.directory = directory;
+    }
+
+    public static void setMemoryCapacity(int memoryCapacity) {
+        synchronized (memory) {
+            PomCache.memoryCapacity = memoryCapacity;
+            while (memory.size() > memoryCapacity) {
+                memory.remove(memory.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Looks a pom up by its repository-relative path (e.g. {@code com/google/guava/guava/33.0/guava-33.0.pom})
+     * in memory first and then on disk. Returns null on a miss.
+     */
+    @Nullable
+    public static Entry lookup(String path) {
+        synchronized (memory) {
+            Entry entry = memory.get(path);
+            if (entry != null) {
+                memoryHits.incrementAndGet();
+                Metrics.cacheAccess("pom", true);
+                return entry;
+            }
+        }
+        if (!isSnapshot(path)) {
+            Entry entry = readDisk(path);
+            if (entry != null) {
+                diskHits.incrementAndGet();
+                Metrics.cacheAccess("pom", true);
+                putMemory(path, entry);
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+        Metrics.cacheAccess("pom", false);
+        return null;
+    }
+
+    public static void store(String path, String repositoryUrl, String content) {
+        Entry entry = new Entry(repositoryUrl, content);
+        putMemory(path, entry);
+        // snapshots can change under the same path, so they never outlive the process
+        if (!isSnapshot(path)) {
+            writeDisk(path, entry);
+        }
+    }
+
+    /**
+     * Returns the pom at {@code repositoryUrl + path}, going to the network only on a cache miss.
+     */
+    @Nullable
+    public static String get(String repositoryUrl, String path) {
+        Entry entry = lookup(path);
+        if (entry != null) {
+            return entry.getContent();
+        }
+        String content = HttpUtil.get(repositoryUrl + path);
+        if (content != null) {
+            store(path, repositoryUrl, content);
+        }
+        return content;
+    }
+
+    public static long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public static long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static void clearMemory() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    // timestamped snapshot builds never change, only files named after the base version do
+    private static boolean isSnapshot(String path) {
+        return path.endsWith("-SNAPSHOT.pom");
+    }
+
+    private static void putMemory(String path, Entry entry) {
+        synchronized (memory) {
+            memory.put(path, entry);
+        }
+    }
+
+    // poms sit next to their jar: <directory>/<group.id>/<artifact>/<version>/<artifact>-<version>.pom
+    private static Path diskPath(String path) {
+        String[] segments = path.split("/");
+        if (segments.length < 4) {
+            return directory.toPath().resolve(path);
+        }
+        int version = segments.length - 2;
+        String groupId = String.join(".", Arrays.copyOfRange(segments, 0, version - 1));
+        return directory.toPath()
+                .resolve(groupId)
+                .resolve(segments[version - 1])
+                .resolve(segments[version])
+                .resolve(segments[version + 1]);
+    }
+
+    @Nullable
+    private static Entry readDisk(String path) {
+        Path pom = diskPath(path);
+        Path repository = pom.resolveSibling(pom.getFileName() + REPOSITORY_SUFFIX);
+        if (!Files.isRegularFile(pom) || !Files.isRegularFile(repository)) {
+            return null;
+        }
+        try {
+            String content = new String(Files.readAllBytes(pom), StandardCharsets.UTF_8);
+            String repositoryUrl = new String(Files.readAllBytes(repository), StandardCharsets.UTF_8).trim();
+            return new Entry(repositoryUrl, content);
+        } catch (IOException e) {
+            logger.warn("Failed to read cached pom {}, caused by: {}", pom, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeDisk(String path, Entry entry) {
+        Path pom = diskPath(path);
+        try {
+            Files.createDirectories(pom.getParent());
+            writeAtomically(pom, entry.getContent());
+            writeAtomically(pom.resolveSibling(pom.getFileName() + REPOSITORY_SUFFIX), entry.getRepositoryUrl());
+        } catch (IOException e) {
+            logger.warn("Failed to cache pom {}, caused by: {}", pom, e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            FileUtil.moveAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Getter
+    public static class Entry {
+        private final String repositoryUrl;
+        private final String content;
+
+        private Entry(String repositoryUrl, String content) {
+            this.repositoryUrl = repositoryUrl;
+            this.content = content;
+        }
+    }
+}
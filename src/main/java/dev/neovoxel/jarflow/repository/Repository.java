@@ -4,6 +4,8 @@ import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+
 @Getter
 public class Repository {
     @NotNull
@@ -40,6 +42,12 @@ public class Repository {
         return new RepositoryBuilder().url("https://jitpack.io/").name("JitPack").build();
     }
 
+    public static Repository mavenLocal() {
+        String path = System.getProperty("maven.repo.local");
+        File directory = path != null ? new File(path) : new File(System.getProperty("user.home"), ".m2/repository");
+        return new RepositoryBuilder().url(directory.toURI().toString()).name("Maven Local").build();
+    }
+
     public static Repository from(org.apache.maven.model.Repository repository) {
         return new RepositoryBuilder().url(repository.getUrl()).name(repository.getName()).build();
     }
@@ -0,0 +1,220 @@
+package dev.neovoxel.jarflow.repository;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.remote.FetchResult;
+import dev.neovoxel.jarflow.remote.HttpUtil;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which repositories to ask for an artifact, and in what order. It learns per-repository latency and
+ * hit rate, remembers 404s per GAV for a while, and prefers repositories that already served the same groupId.
+ */
+public class RepositoryRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Router");
+
+    // a repository that missed this many artifacts of a groupId without a single hit is asked last for it
+    private static final int GROUP_MISS_THRESHOLD = 3;
+
+    // how long a 404 for a GAV is remembered
+    @Setter
+    @Getter
+    private static long negativeTtl = TimeUnit.MINUTES.toMillis(10);
+
+    // after this many milliseconds without an answer the next repository is asked as well, 0 disables hedging
+    @Setter
+    @Getter
+    private static long hedgeDelay = 0;
+
+    private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private static final Map<String, Long> notFound = new ConcurrentHashMap<>();
+
+    private static final Map<String, GroupStats> groups = new ConcurrentHashMap<>();
+
+    private static final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JarFlow Router #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Returns the repositories worth asking for {@code dependency}, best candidates first.
+     * Repositories that recently returned 404 for it are left out.
+     */
+    public static List<Repository> order(Collection<Repository> repositories, Dependency dependency) {
+        long now = System.currentTimeMillis();
+        List<Repository> candidates = new ArrayList<>();
+        for (Repository repository : repositories) {
+            Long expiry = notFound.get(gavKey(repository, dependency));
+            if (expiry != null && expiry > now) {
+                continue;
+            }
+            candidates.add(repository);
+        }
+        List<Repository> original = new ArrayList<>(candidates);
+        // stable, so repositories nothing is known about keep their configured order
+        candidates.sort(Comparator.comparingInt((Repository repository) -> groupRank(repository, dependency))
+                .thenComparingDouble(RepositoryRouter::score)
+                .thenComparingInt(original::indexOf));
+        return candidates;
+    }
+
+    /**
+     * Fetches {@code path} from the first repository that has it, in the order given by {@link #order}.
+     */
+    @Nullable
+    public static Routed fetch(Collection<Repository> repositories, Dependency dependency, String path) {
+        List<Repository> ordered = order(repositories, dependency);
+        if (hedgeDelay <= 0 || ordered.size() < 2) {
+            for (Repository repository : ordered) {
+                FetchResult result = fetch(repository, dependency, path);
+                if (result.isSuccess()) {
+                    return new Routed(repository, result.getContent());
+                }
+            }
+            return null;
+        }
+        return fetchHedged(ordered, dependency, path);
+    }
+
+    public static void clear() {
+        stats.clear();
+        notFound.clear();
+        groups.clear();
+    }
+
+    private static Routed fetchHedged(List<Repository> ordered, Dependency dependency, String path) {
+        BlockingQueue<Routed> done = new LinkedBlockingQueue<>();
+        int next = 0;
+        int running = 0;
+        try {
+            launch(ordered.get(next++), dependency, path, done);
+            running++;
+            while (running > 0) {
+                Routed routed = next < ordered.size()
+                        ? done.poll(hedgeDelay, TimeUnit.MILLISECONDS)
+                        : done.take();
+                if (routed == null) {
+                    // the running requests are slow, ask the next repository too
+                    logger.debug("Hedging {} to {}", dependency.getLocation(), ordered.get(next).getUrl());
+                    launch(ordered.get(next++), dependency, path, done);
+                    running++;
+                    continue;
+                }
+                running--;
+                if (routed.getContent() != null) {
+                    return routed;
+                }
+                if (running == 0 && next < ordered.size()) {
+                    launch(ordered.get(next++), dependency, path, done);
+                    running++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void launch(Repository repository, Dependency dependency, String path, BlockingQueue<Routed> done) {
+        hedgeExecutor.execute(() -> {
+            FetchResult result = new FetchResult(-1, null);
+            try {
+                result = fetch(repository, dependency, path);
+            } finally {
+                done.add(new Routed(repository, result.getContent()));
+            }
+        });
+    }
+
+    private static FetchResult fetch(Repository repository, Dependency dependency, String path) {
+        long start = System.nanoTime();
+        FetchResult result = HttpUtil.fetch(repository.getUrl() + path);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (result.getStatus() >= 0) {
+            stats.computeIfAbsent(repository.getUrl(), key -> new Stats()).record(elapsed, result.isSuccess());
+        }
+        GroupStats group = groups.computeIfAbsent(groupKey(repository, dependency), key -> new GroupStats());
+        if (result.isSuccess()) {
+            group.hits.incrementAndGet();
+        } else if (result.isNotFound()) {
+            group.misses.incrementAndGet();
+            notFound.put(gavKey(repository, dependency), System.currentTimeMillis() + negativeTtl);
+        }
+        return result;
+    }
+
+    // 0: has served this groupId, 1: unknown, 2: keeps missing it
+    private static int groupRank(Repository repository, Dependency dependency) {
+        GroupStats group = groups.get(groupKey(repository, dependency));
+        if (group == null) {
+            return 1;
+        }
+        if (group.hits.get() > 0) {
+            return 0;
+        }
+        return group.misses.get() >= GROUP_MISS_THRESHOLD ? 2 : 1;
+    }
+
+    // expected time until a hit, lower is better; unknown repositories score 0 so they are tried in order
+    private static double score(Repository repository) {
+        Stats repositoryStats = stats.get(repository.getUrl());
+        return repositoryStats == null ? 0 : repositoryStats.score();
+    }
+
+    private static String gavKey(Repository repository, Dependency dependency) {
+        return repository.getUrl() + "|" + dependency.getLocation();
+    }
+
+    private static String groupKey(Repository repository, Dependency dependency) {
+        return repository.getUrl() + "|" + dependency.getGroupId();
+    }
+
+    @Getter
+    public static class Routed {
+        private final Repository repository;
+        @Nullable
+        private final String content;
+
+        private Routed(Repository repository, @Nullable String content) {
+            this.repository = repository;
+            this.content = content;
+        }
+    }
+
+    private static class Stats {
+        private double latency = -1;
+        private long hits;
+        private long requests;
+
+        synchronized void record(long elapsed, boolean hit) {
+            latency = latency < 0 ? elapsed : latency * 0.8 + elapsed * 0.2;
+            requests++;
+            if (hit) hits++;
+        }
+
+        synchronized double score() {
+            double hitRate = (hits + 1.0) / (requests + 2.0);
+            return Math.max(latency, 1) / hitRate;
+        }
+    }
+
+    private static class GroupStats {
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+    }
+}
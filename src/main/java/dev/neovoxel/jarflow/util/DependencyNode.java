@@ -12,6 +12,8 @@ public class DependencyNode {
     String downloadUrl;
     DependencyNode parent;
     String newVersion;
+    // the range, LATEST or RELEASE the version was resolved from, null for plain versions
+    String requestedVersion;
     List<DependencyNode> children;
 
     public DependencyNode(Dependency dependency, String downloadUrl) {
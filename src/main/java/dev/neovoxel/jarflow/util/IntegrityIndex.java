@@ -0,0 +1,182 @@
+package dev.neovoxel.jarflow.util;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the size, modification time and SHA-1 of every hashed jar under a lib directory, so a jar that has
+ * not changed since it was hashed can be trusted without hashing it again. Entries whose hash could not be
+ * compared with a published checksum are kept too, marked unverified. Changes are appended to the file, later
+ * lines win, and the file is compacted on load once most of it is superseded.
+ */
+public class IntegrityIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Integrity");
+
+    private static final String FILE_NAME = "integrity.idx";
+
+    private static final String REMOVED = "-";
+
+    private static final String UNVERIFIED = "unverified";
+
+    private static final Map<Path, IntegrityIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    private final Path file;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private int lines;
+
+    private IntegrityIndex(Path directory) {
+        this.directory = directory;
+        this.file = directory.resolve(FILE_NAME);
+        read();
+        if (lines > entries.size() * 2 + 64) {
+            try {
+                write();
+            } catch (IOException e) {
+                logger.warn("Failed to compact {}, caused by: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    public static IntegrityIndex of(File libDir) {
+        return indexes.computeIfAbsent(libDir.toPath().toAbsolutePath().normalize(), IntegrityIndex::new);
+    }
+
+    /**
+     * Returns true if the jar is unchanged since its hash was recorded and checked against a published checksum.
+     */
+    public synchronized boolean isVerified(File jar) {
+        return isUnchanged(jar) && entries.get(key(jar)).verified;
+    }
+
+    /**
+     * Returns true if the jar is unchanged since its hash was recorded, verified or not.
+     */
+    public synchronized boolean isUnchanged(File jar) {
+        Entry entry = entries.get(key(jar));
+        return entry != null && jar.isFile() && entry.size == jar.length() && entry.lastModified == jar.lastModified();
+    }
+
+    @Nullable
+    public synchronized String getSha1(File jar) {
+        return isUnchanged(jar) ? entries.get(key(jar)).sha1 : null;
+    }
+
+    public synchronized void record(File jar, String sha1) {
+        record(jar, sha1, true);
+    }
+
+    public synchronized void record(File jar, String sha1, boolean verified) {
+        String key = key(jar);
+        Entry entry = new Entry(jar.length(), jar.lastModified(), sha1, verified);
+        entries.put(key, entry);
+        append(line(key, entry));
+    }
+
+    public synchronized void remove(File jar) {
+        String key = key(jar);
+        if (entries.remove(key) != null) {
+            append(key + "\t" + REMOVED);
+        }
+    }
+
+    private void append(String line) {
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+                writer.newLine();
+            }
+            lines++;
+        } catch (IOException e) {
+            logger.warn("Failed to write {}, caused by: {}", file, e.getMessage());
+        }
+    }
+
+    private String key(File jar) {
+        Path path = jar.toPath().toAbsolutePath().normalize();
+        return path.startsWith(directory) ? directory.relativize(path).toString().replace('\\', '/') : path.toString();
+    }
+
+    private void read() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] parts = line.split("\t");
+                if (parts.length == 2 && REMOVED.equals(parts[1])) {
+                    entries.remove(parts[0]);
+                    continue;
+                }
+                // a line cut short by a crash while appending is skipped, the hash always comes last
+                if (parts.length < 4 || parts.length > 5 || parts[parts.length - 1].length() != 40) continue;
+                if (parts.length == 5 && !UNVERIFIED.equals(parts[3])) continue;
+                try {
+                    entries.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            parts[parts.length - 1], parts.length == 4));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable integrity index {}, caused by: {}", file, e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private void write() throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(line(entry.getKey(), entry.getValue()));
+                    writer.newLine();
+                }
+            }
+            FileUtil.moveAtomically(temp, file);
+            lines = entries.size();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String line(String key, Entry entry) {
+        String line = key + "\t" + entry.size + "\t" + entry.lastModified + "\t";
+        return entry.verified ? line + entry.sha1 : line + UNVERIFIED + "\t" + entry.sha1;
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String sha1;
+        private final boolean verified;
+
+        private Entry(long size, long lastModified, String sha1, boolean verified) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+            this.verified = verified;
+        }
+    }
+}
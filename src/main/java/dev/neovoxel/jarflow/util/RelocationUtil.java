@@ -0,0 +1,76 @@
+package dev.neovoxel.jarflow.util;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import dev.neovoxel.jarflow.dependency.RelocationRule;
+import dev.neovoxel.jarflow.metrics.Metrics;
+import me.lucko.jarrelocator.JarRelocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+public class RelocationUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Relocator");
+
+    private static final String KEY_SUFFIX = ".key";
+
+    /**
+     * Relocates {@code input} into {@code output} by the rules of {@code dependency} unless {@code output} was
+     * already produced from the same input bytes and the same rules. The cache key (input SHA-1 plus a hash of the canonical rules) is kept next to the
+     * output, and the output is replaced atomically so a concurrent start never sees a half-written jar.
+     */
+    public static File relocate(File input, File output, Dependency dependency, IntegrityIndex index) throws IOException {
+        String inputSha1 = index.getSha1(input);
+        if (inputSha1 == null) {
+            inputSha1 = HashUtil.sha1(input);
+        }
+        String key = inputSha1 + ":" + HashUtil.sha1(describe(dependency.getRelocationRules()));
+        Path keyFile = output.toPath().resolveSibling(output.getName() + KEY_SUFFIX);
+        if (index.isVerified(output) && Files.isRegularFile(keyFile)
+                && key.equals(new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8).trim())) {
+            logger.debug("Reusing relocated jar {}", output);
+            Metrics.cacheAccess("relocation", true);
+            return output;
+        }
+
+        Metrics.cacheAccess("relocation", false);
+        Path directory = output.toPath().getParent();
+        Path temp = Files.createTempFile(directory, output.getName(), ".tmp");
+        Path tempKey = Files.createTempFile(directory, keyFile.getFileName().toString(), ".tmp");
+        try {
+            new JarRelocator(input, temp.toFile(), dependency.getRelocations()).run();
+            FileUtil.moveAtomically(temp, output.toPath());
+            index.record(output, HashUtil.sha1(output));
+            Files.write(tempKey, key.getBytes(StandardCharsets.UTF_8));
+            FileUtil.moveAtomically(tempKey, keyFile);
+            logger.info("Relocated {} to {}", input.getName(), output.getName());
+        } finally {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(tempKey);
+        }
+        return output;
+    }
+
+    /**
+     * Builds a stable description of a rule list from the settings each rule was created with; includes and
+     * excludes are kept sorted, so equal rules always describe the same.
+     */
+    public static String describe(Collection<RelocationRule> rules) {
+        StringBuilder builder = new StringBuilder();
+        for (RelocationRule rule : rules) {
+            if (builder.length() > 0) builder.append(';');
+            builder.append("{pattern=").append(rule.getPattern())
+                    .append(",relocatedPattern=").append(rule.getRelocatedPattern())
+                    .append(",includes=").append(rule.getIncludes())
+                    .append(",excludes=").append(rule.getExcludes())
+                    .append('}');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package dev.neovoxel.jarflow.util;
+
+import dev.neovoxel.jarflow.dependency.Dependency;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Snapshot jars are saved under their base version, so a sidecar next to each one remembers which timestamped
+ * build (such as {@code 1.0-20240101.120000-3}) the jar holds.
+ */
+public class SnapshotBuilds {
+
+    private static final Logger logger = LoggerFactory.getLogger("JarFlow Snapshots");
+
+    private static final String SUFFIX = ".snapshot";
+
+    /**
+     * Returns the file version of the build whose jar is in {@code libDir}, or null if none was recorded.
+     */
+    @Nullable
+    public static String read(File libDir, Dependency dependency) {
+        Path path = sidecar(libDir, dependency);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            logger.warn("Failed to read {}, caused by: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    public static void write(File libDir, Dependency dependency, String fileVersion) throws IOException {
+        Files.write(sidecar(libDir, dependency), fileVersion.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // beside the jar: <libDir>/<group.id>/<artifact>/<version>/<artifact>-<version>.jar.snapshot
+    private static Path sidecar(File libDir, Dependency dependency) {
+        return libDir.toPath()
+                .resolve(dependency.getGroupId())
+                .resolve(dependency.getArtifactId())
+                .resolve(dependency.getVersion())
+                .resolve(dependency.getArtifactId() + "-" + dependency.getVersion() + ".jar" + SUFFIX);
+    }
+}
@@ -0,0 +1,141 @@
+package dev.neovoxel.jarflow.remote;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeepAliveTransportTest {
+
+    private static final byte[] BODY = new byte[4096];
+
+    private ServerSocket server;
+
+    private ExecutorService connections;
+
+    // every accepted socket is one TCP handshake the transport paid for
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private String url;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "KeepAliveTransportTest Server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connections.execute(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    accepted.incrementAndGet();
+                    connections.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        url = "http://127.0.0.1:" + server.getLocalPort() + "/artifact.jar";
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+
+    @Test
+    void sequentialRequestsShareOneConnection() throws IOException {
+        KeepAliveTransport transport = new KeepAliveTransport();
+        for (int i = 0; i < 20; i++) {
+            try (HttpResponse response = transport.get(url, Collections.emptyMap())) {
+                assertEquals(200, response.getStatus());
+                assertEquals(BODY.length, readFully(response.getBody()));
+            }
+        }
+        assertEquals(1, accepted.get());
+    }
+
+    @Test
+    void unreadBodiesAreDrainedForReuse() throws IOException {
+        KeepAliveTransport transport = new KeepAliveTransport();
+        for (int i = 0; i < 20; i++) {
+            transport.get(url, Collections.emptyMap()).close();
+        }
+        assertEquals(1, accepted.get());
+    }
+
+    @Test
+    void concurrentRequestsStayWithinTheHostLimit() throws Exception {
+        KeepAliveTransport transport = new KeepAliveTransport(2, 10_000, 30_000);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                results.add(clients.submit(() -> {
+                    try (HttpResponse response = transport.get(url, Collections.emptyMap())) {
+                        return readFully(response.getBody());
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(BODY.length, result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertTrue(accepted.get() <= 2, "expected at most 2 connections, got " + accepted.get());
+    }
+
+    private static int readFully(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        int total = 0;
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    // a minimal HTTP/1.1 server that answers every request on the socket until the client hangs up
+    private static void serve(Socket socket) {
+        try (Socket connection = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.ISO_8859_1));
+             OutputStream out = new BufferedOutputStream(connection.getOutputStream())) {
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                boolean close = false;
+                String header;
+                while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                    close |= header.equalsIgnoreCase("Connection: close");
+                }
+                boolean head = requestLine.startsWith("HEAD ");
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/java-archive\r\nContent-Length: " + BODY.length
+                        + (close ? "\r\nConnection: close" : "") + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                if (!head) {
+                    out.write(BODY);
+                }
+                out.flush();
+                if (close) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+            // the client closed the connection
+        }
+    }
+}